@@ -0,0 +1,117 @@
+package ptemplin.nlp.asr.acoustic;
+
+/**
+ * The sufficient statistics for re-estimating a linear {@link ContinuousHMM} from a corpus: the
+ * expected number of frames emitted on each arc, and the expected sum and sum of squares of
+ * each component of the frames emitted on it, along with the total log likelihood of the
+ * corpus. Accumulators of disjoint parts of a corpus can be merged in any grouping, so the
+ * E-step can be split across threads; merging in a fixed order gives identical sums however
+ * the work was split. Not thread-safe.
+ */
+public class BaumWelchAccumulator {
+	
+	private final int numStates;
+	private final int observationSize;
+	// by arc, see HiddenMarkovModel.getArcIndex
+	private final double[] occupancies;
+	private final double[][] sums;
+	private final double[][] squareSums;
+	
+	private double logLikelihood = 0;
+	private long numFrames = 0;
+	private int numUtterances = 0;
+	private int numSkippedUtterances = 0;
+	
+	public BaumWelchAccumulator(int numStates, int observationSize) {
+		this.numStates = numStates;
+		this.observationSize = observationSize;
+		int numArcs = 2*numStates - 1;
+		this.occupancies = new double[numArcs];
+		this.sums = new double[numArcs][observationSize];
+		this.squareSums = new double[numArcs][observationSize];
+	}
+	
+	void addArcOccupancy(int arc, double occupancy, double[] observations, int offset) {
+		occupancies[arc] += occupancy;
+		final double[] arcSums = sums[arc];
+		final double[] arcSquareSums = squareSums[arc];
+		for (int k = 0; k < observationSize; k++) {
+			double weighted = occupancy*observations[offset + k];
+			arcSums[k] += weighted;
+			arcSquareSums[k] += weighted*observations[offset + k];
+		}
+	}
+	
+	void addUtterance(double logLikelihood, int numFrames) {
+		this.logLikelihood += logLikelihood;
+		this.numFrames += numFrames;
+		numUtterances++;
+	}
+	
+	void addSkippedUtterance() {
+		numSkippedUtterances++;
+	}
+	
+	/**
+	 * Adds the statistics of the other accumulator to this one.
+	 */
+	public void merge(BaumWelchAccumulator other) {
+		if (other.numStates != numStates || other.observationSize != observationSize) {
+			throw new IllegalArgumentException("Accumulators differ in size");
+		}
+		for (int arc = 0; arc < occupancies.length; arc++) {
+			occupancies[arc] += other.occupancies[arc];
+			for (int k = 0; k < observationSize; k++) {
+				sums[arc][k] += other.sums[arc][k];
+				squareSums[arc][k] += other.squareSums[arc][k];
+			}
+		}
+		logLikelihood += other.logLikelihood;
+		numFrames += other.numFrames;
+		numUtterances += other.numUtterances;
+		numSkippedUtterances += other.numSkippedUtterances;
+	}
+	
+	double getOccupancy(int arc) {
+		return occupancies[arc];
+	}
+	
+	double[] getSums(int arc) {
+		return sums[arc];
+	}
+	
+	double[] getSquareSums(int arc) {
+		return squareSums[arc];
+	}
+	
+	int getNumStates() {
+		return numStates;
+	}
+	
+	int getObservationSize() {
+		return observationSize;
+	}
+	
+	/**
+	 * @return the natural log of the likelihood of the accumulated utterances
+	 */
+	public double getLogLikelihood() {
+		return logLikelihood;
+	}
+	
+	public long getNumFrames() {
+		return numFrames;
+	}
+	
+	public int getNumUtterances() {
+		return numUtterances;
+	}
+	
+	/**
+	 * @return the number of utterances which could not be aligned to the model
+	 */
+	public int getNumSkippedUtterances() {
+		return numSkippedUtterances;
+	}
+	
+}
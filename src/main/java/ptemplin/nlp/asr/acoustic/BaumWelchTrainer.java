@@ -0,0 +1,150 @@
+package ptemplin.nlp.asr.acoustic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+
+/**
+ * Trains a model on a whole corpus by Baum-Welch re-estimation. Each iteration runs the E-step
+ * of every utterance in parallel on a fork-join pool against the same parameters, into an
+ * accumulator of its own, merges the accumulators in the order of the corpus, and then
+ * re-estimates the parameters once from the merged statistics. Since the sums are always added
+ * up in the same order, the trained model is bit-identical whatever the number of workers.
+ */
+public class BaumWelchTrainer implements AutoCloseable {
+	
+	// the number of work items per worker, to balance utterances of differing length
+	private static final int CHUNKS_PER_WORKER = 4;
+	
+	private final ForkJoinPool pool;
+	private final int parallelism;
+	
+	public BaumWelchTrainer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param parallelism the number of workers
+	 */
+	public BaumWelchTrainer(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Runs the given number of iterations over the corpus.
+	 *
+	 * @return the statistics of each iteration
+	 */
+	public List<Iteration> train(ContinuousHMM model, List<FeatureMatrix> corpus, int numIterations) throws InterruptedException {
+		List<Iteration> iterations = new ArrayList<>(numIterations);
+		for (int i = 0; i < numIterations; i++) {
+			iterations.add(iterate(model, corpus));
+		}
+		return iterations;
+	}
+	
+	/**
+	 * Runs one iteration over the corpus, re-estimating the model in place.
+	 *
+	 * @param model to train
+	 * @param corpus of utterances
+	 * @return the statistics of the iteration, including the likelihood of the corpus under
+	 *         the parameters before re-estimation
+	 */
+	public Iteration iterate(ContinuousHMM model, List<FeatureMatrix> corpus) throws InterruptedException {
+		long startTime = System.nanoTime();
+		final BaumWelchAccumulator[] accumulators = new BaumWelchAccumulator[corpus.size()];
+		final int numChunks = Math.min(corpus.size(), parallelism*CHUNKS_PER_WORKER);
+		List<Callable<Void>> tasks = new ArrayList<>(numChunks);
+		for (int chunk = 0; chunk < numChunks; chunk++) {
+			final int first = (int) ((long) chunk*corpus.size()/numChunks);
+			final int last = (int) ((long) (chunk + 1)*corpus.size()/numChunks);
+			tasks.add(() -> {
+				for (int u = first; u < last; u++) {
+					accumulators[u] = model.createAccumulator();
+					model.accumulate(corpus.get(u), accumulators[u]);
+				}
+				return null;
+			});
+		}
+		for (Future<Void> result : pool.invokeAll(tasks)) {
+			try {
+				result.get();
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) ex.getCause();
+				}
+				throw new IllegalStateException("E-step failed", ex.getCause());
+			}
+		}
+		BaumWelchAccumulator total = model.createAccumulator();
+		for (BaumWelchAccumulator accumulator : accumulators) {
+			total.merge(accumulator);
+		}
+		model.reestimate(total);
+		return new Iteration(total, System.nanoTime() - startTime);
+	}
+	
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * The likelihood of the corpus in an iteration and the throughput of the iteration.
+	 */
+	public static class Iteration {
+		
+		private final double logLikelihood;
+		private final long numFrames;
+		private final int numUtterances;
+		private final int numSkippedUtterances;
+		private final long elapsedNanos;
+		
+		private Iteration(BaumWelchAccumulator total, long elapsedNanos) {
+			this.logLikelihood = total.getLogLikelihood();
+			this.numFrames = total.getNumFrames();
+			this.numUtterances = total.getNumUtterances();
+			this.numSkippedUtterances = total.getNumSkippedUtterances();
+			this.elapsedNanos = elapsedNanos;
+		}
+		
+		/**
+		 * @return the natural log of the likelihood of the utterances which were used
+		 */
+		public double getLogLikelihood() {
+			return logLikelihood;
+		}
+		
+		public long getNumFrames() {
+			return numFrames;
+		}
+		
+		public int getNumUtterances() {
+			return numUtterances;
+		}
+		
+		/**
+		 * @return the number of utterances which could not be aligned to the model
+		 */
+		public int getNumSkippedUtterances() {
+			return numSkippedUtterances;
+		}
+		
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+		
+		public double getFramesPerSecond() {
+			return numFrames/(elapsedNanos/1e9);
+		}
+		
+	}
+	
+}
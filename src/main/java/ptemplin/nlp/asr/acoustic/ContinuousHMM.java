@@ -1,8 +1,8 @@
 package ptemplin.nlp.asr.acoustic;
 
-import ptemplin.nlp.asr.util.Gaussian;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.util.DiagonalGaussian;
 
-import java.math.BigDecimal;
 import java.util.Arrays;
 
 public class ContinuousHMM extends HiddenMarkovModel {
@@ -12,12 +12,30 @@ public class ContinuousHMM extends HiddenMarkovModel {
 
 	private final double[][][] outputMeans;
 	private final double[][][][] outputVariances;
+	// the output distribution of each arc, precomputed from its means and variances
+	private final DiagonalGaussian[][] outputDensities;
 
 	public ContinuousHMM() {
+		this(DEFAULT_MEANS, DEFAULT_VARIANCES);
+	}
+
+	/**
+	 * Creates a model whose output distributions all start at the given means and diagonal
+	 * variances, such as zeros and ones for features from a
+	 * {@link ptemplin.nlp.asr.frontend.CepstralNormalizationStage} normalizing variance.
+	 */
+	public ContinuousHMM(double[] initialMeans, double[] initialVariances) {
 		super();
 		outputMeans = new double[numStates][numStates][observationSize];
 		outputVariances = new double[numStates][numStates][observationSize][observationSize];
-		flatInitialize();
+		outputDensities = new DiagonalGaussian[numStates][numStates];
+		for (int i = 0; i < numStates; i++) {
+			for (int j = i; j <= i + 1 && j < numStates; j++) {
+				outputDensities[i][j] = new DiagonalGaussian(observationSize);
+			}
+		}
+		flatInitialize(initialMeans, initialVariances);
+		onOutputParametersChanged();
 	}
 
 	public double[][][] getOutputMeans() {
@@ -28,7 +46,27 @@ public class ContinuousHMM extends HiddenMarkovModel {
 		return outputVariances;
 	}
 
-	private void flatInitialize() {
+	/**
+	 * Copies the transition probabilities and output parameters of this model over those of
+	 * the target, such as to snapshot the model while it is being trained.
+	 */
+	public void copyParametersTo(ContinuousHMM target) {
+		if (target.numStates != numStates || target.observationSize != observationSize) {
+			throw new IllegalArgumentException("Models differ in size");
+		}
+		for (int i = 0; i < numStates; i++) {
+			System.arraycopy(transitionProbs[i], 0, target.transitionProbs[i], 0, numStates);
+			for (int j = 0; j < numStates; j++) {
+				System.arraycopy(outputMeans[i][j], 0, target.outputMeans[i][j], 0, observationSize);
+				for (int k = 0; k < observationSize; k++) {
+					System.arraycopy(outputVariances[i][j][k], 0, target.outputVariances[i][j][k], 0, observationSize);
+				}
+			}
+		}
+		target.outputParametersChanged();
+	}
+
+	private void flatInitialize(double[] initialMeans, double[] initialVariances) {
 		// initialize transition probabilities equally
 		for (int i = 0; i < numStates - 1; i++) {
 			for (int j = i; j <= i + 1; j++) {
@@ -40,7 +78,7 @@ public class ContinuousHMM extends HiddenMarkovModel {
 		for (int i = 0; i < numStates; i++) {
 			for (int j = i; j <= i + 1 && j < numStates; j++) {
 				for (int k = 0; k < observationSize; k++) {
-					outputMeans[i][j][k] = DEFAULT_MEANS[k];
+					outputMeans[i][j][k] = initialMeans[k];
 				}
 			}
 		}
@@ -48,14 +86,55 @@ public class ContinuousHMM extends HiddenMarkovModel {
 		for (int i = 0; i < numStates; i++) {
 			for (int j = i; j <= i + 1 && j < numStates; j++) {
 				for (int k = 0; k < observationSize; k++) {
-					outputVariances[i][j][k][k] = DEFAULT_VARIANCES[k];
+					outputVariances[i][j][k][k] = initialVariances[k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Re-estimates every parameter at once from the statistics accumulated over a corpus, the
+	 * M-step of {@link BaumWelchTrainer}. Arcs and states which were never occupied keep their
+	 * parameters.
+	 */
+	public void reestimate(BaumWelchAccumulator accumulator) {
+		if (accumulator.getNumStates() != numStates || accumulator.getObservationSize() != observationSize) {
+			throw new IllegalArgumentException("Accumulator does not match the model");
+		}
+		final double minTransitionProb = logMath.logToLinear(MIN_LOG_TRANSITION_PROB);
+		for (int i = 0; i < numStates - 1; i++) {
+			double selfOccupancy = accumulator.getOccupancy(getArcIndex(i, i));
+			double nextOccupancy = accumulator.getOccupancy(getArcIndex(i, i + 1));
+			double totalOccupancy = selfOccupancy + nextOccupancy;
+			if (totalOccupancy > 0) {
+				double selfProb = Math.max(selfOccupancy/totalOccupancy, minTransitionProb);
+				double nextProb = Math.max(nextOccupancy/totalOccupancy, minTransitionProb);
+				transitionProbs[i][i] = selfProb/(selfProb + nextProb);
+				transitionProbs[i][i + 1] = nextProb/(selfProb + nextProb);
+			}
+		}
+		for (int i = 0; i < numStates; i++) {
+			for (int j = i; j <= i + 1 && j < numStates; j++) {
+				int arc = getArcIndex(i, j);
+				double occupancy = accumulator.getOccupancy(arc);
+				if (!(occupancy > 0)) {
+					continue;
+				}
+				double[] sums = accumulator.getSums(arc);
+				double[] squareSums = accumulator.getSquareSums(arc);
+				for (int k = 0; k < observationSize; k++) {
+					double mean = sums[k]/occupancy;
+					outputMeans[i][j][k] = mean;
+					// rounding can take the variance of a nearly constant component below zero
+					outputVariances[i][j][k][k] = Math.max(squareSums[k]/occupancy - mean*mean, 0);
 				}
 			}
 		}
+		outputParametersChanged();
 	}
 
 	// @Override
-	public void updateOutputParameters2(double[][][] arcProbs, double[][] observationSeq) {
+	public void updateOutputParameters2(double[][][] arcProbs, FeatureMatrix observationSeq) {
 		final int totalTime = arcProbs[0][0].length;
 		for (int i = 0; i < numStates; i++) {
 			for (int j = i; j <= i + 1 && j < numStates; j++) {
@@ -86,8 +165,8 @@ public class ContinuousHMM extends HiddenMarkovModel {
                             if (logMultiplier < -100000) {
                                 logMultiplier = -100000;
                             }
-                            double logMeanPart = logMultiplier + logMath.linearToLog(observationSeq[t][component]);
-                            double logVarPart = logMultiplier + logMath.linearToLog(Math.pow(observationSeq[t][component], 2));
+                            double logMeanPart = logMultiplier + logMath.linearToLog(observationSeq.get(t, component));
+                            double logVarPart = logMultiplier + logMath.linearToLog(Math.pow(observationSeq.get(t, component), 2));
                             if (first) {
                                 logMeanSum = logMeanPart;
                                 logVarSum = logVarPart;
@@ -109,8 +188,11 @@ public class ContinuousHMM extends HiddenMarkovModel {
 	}
 
 	@Override
-    public void updateOutputParameters(double[][][] logArcProbs, double[][] observationSeq) {
+    public void updateOutputParameters(double[][][] logArcProbs, FeatureMatrix observationSeq) {
         final int totalTime = logArcProbs[0][0].length;
+        final double[] observations = observationSeq.getData();
+        final double[] meanSums = new double[observationSize];
+        final double[] varSums = new double[observationSize];
         for (int i = 0; i < numStates; i++) {
             for (int j = i; j <= i + 1 && j < numStates; j++) {
                 // first calculate the denominator
@@ -127,33 +209,32 @@ public class ContinuousHMM extends HiddenMarkovModel {
                     }
                 }
                 double denominator = logMath.logToLinear(logDenominator);
+                if (!(denominator > 0)) {
+                    // the arc was never taken, so there is nothing to re-estimate it from
+                    continue;
+                }
                 if (i == 3 && j == 4) {
                     // System.out.println("Old Parameters");
                     System.out.println("Denominator: " + denominator);
                     // printStateParams(i, j);
                 }
-                // for each vector component
-                for (int component = 0; component < observationSize; component++) {
-                    double meanSum = Double.NEGATIVE_INFINITY;
-                    double varSum = Double.NEGATIVE_INFINITY;
-                    first = true;
-                    for (int t = 0; t < totalTime; t++) {
-                        if (logArcProbs[i][j][t] != 0.d) {
-                            double arcProb = logMath.logToLinear(logArcProbs[i][j][t]);
-                            double meanPart = arcProb * observationSeq[t][component];
-                            double varPart = arcProb * Math.pow(observationSeq[t][component] - outputMeans[i][j][component], 2);
-                            if (first) {
-                                meanSum = meanPart;
-                                varSum = varPart;
-                                first = false;
-                            } else {
-                                meanSum += meanPart;
-                                varSum += varPart;
-                            }
+                // accumulate every vector component a frame at a time, against the old means
+                Arrays.fill(meanSums, 0);
+                Arrays.fill(varSums, 0);
+                for (int t = 0; t < totalTime; t++) {
+                    if (logArcProbs[i][j][t] != 0.d) {
+                        double arcProb = logMath.logToLinear(logArcProbs[i][j][t]);
+                        int offset = observationSeq.getOffset(t);
+                        for (int component = 0; component < observationSize; component++) {
+                            double observation = observations[offset + component];
+                            meanSums[component] += arcProb * observation;
+                            varSums[component] += arcProb * Math.pow(observation - outputMeans[i][j][component], 2);
                         }
                     }
-                    outputMeans[i][j][component] = meanSum / denominator;
-                    outputVariances[i][j][component][component] = varSum / denominator;
+                }
+                for (int component = 0; component < observationSize; component++) {
+                    outputMeans[i][j][component] = meanSums[component] / denominator;
+                    outputVariances[i][j][component][component] = varSums[component] / denominator;
                 }
                 if (i == 3 && j == 4) {
                     printStateParams(i, j);
@@ -163,17 +244,19 @@ public class ContinuousHMM extends HiddenMarkovModel {
     }
 
 	@Override
-	protected double computeOutputProbability(int state1, int state2, int timeStep) {
-		BigDecimal gaussianResult = Gaussian.multiGaussian(outputMeans[state1][state2],
-				outputVariances[state1][state2],
-				currentObservationSeq[timeStep]);
-        //System.out.println("Linear output prob: " + gaussianResult.toString().substring(0,10));
-        double doubleResult = gaussianResult.doubleValue();
-        //printOutputProbabilitySummary(state1, state2, timeStep, doubleResult);
-        if (doubleResult < 1e-300) {
-            doubleResult = 1e-300;
-        }
-		return logMath.linearToLog(doubleResult);
+	protected void onOutputParametersChanged() {
+		for (int i = 0; i < numStates; i++) {
+			for (int j = i; j <= i + 1 && j < numStates; j++) {
+				outputDensities[i][j].setParameters(outputMeans[i][j], outputVariances[i][j]);
+			}
+		}
+	}
+
+	@Override
+	protected double computeOutputProbability(int state1, int state2, FeatureMatrix observationSeq, int timeStep) {
+		double lnDensity = outputDensities[state1][state2].logDensity(observationSeq.getData(),
+				observationSeq.getOffset(timeStep));
+		return logMath.lnToLog(lnDensity);
 	}
 
 	private void printModelParams(boolean trans, boolean means, boolean vars) {
@@ -234,14 +317,14 @@ public class ContinuousHMM extends HiddenMarkovModel {
             System.out.print("#sd's(" + state1 + "," + state2 + "): [");
             double totalSds = 0;
             for (int comp = 0; comp < observationSize; comp++) {
-                double meanDiff = currentObservationSeq[timeStep][comp] - outputMeans[state1][state2][comp];
+                double meanDiff = currentObservationSeq.get(timeStep, comp) - outputMeans[state1][state2][comp];
                 double sds = Math.abs(meanDiff / Math.sqrt(outputVariances[state1][state2][comp][comp]));
                 totalSds += sds;
                 System.out.print(sds + ", ");
             }
             System.out.println("]");
             System.out.println("Total sd's: " + totalSds);
-            System.out.println("Observation: " + Arrays.toString(currentObservationSeq[timeStep]));
+            System.out.println("Observation: " + Arrays.toString(currentObservationSeq.getFrame(timeStep)));
             System.out.println("Double output prob: " + result);
         }
     }
@@ -5,6 +5,7 @@ import static ptemplin.nlp.asr.frontend.FeatureAnalyzer.NUM_MFCC_COMPONENTS;
 import java.math.BigDecimal;
 import java.util.List;
 
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
 import ptemplin.nlp.asr.util.*;
 
 /**
@@ -22,10 +23,14 @@ public abstract class HiddenMarkovModel {
 	
 	protected final double[][] transitionProbs;
 	
-	protected double[][] currentObservationSeq;
+	protected FeatureMatrix currentObservationSeq;
 
 	protected final LogMath logMath;
 	
+	// the log output probabilities of the sequence being evaluated or trained on, by arc and
+	// then frame, see getArcIndex; only reused as a buffer, refilled by every call
+	private double[][] logEmissions;
+	
 	HiddenMarkovModel() {
 		numStates = DEFAULT_NUM_STATES;
 		observationSize = DEFAULT_OBS_SIZE;
@@ -36,43 +41,186 @@ public abstract class HiddenMarkovModel {
 	public double[][] getTransitionProbs() { return transitionProbs; }
 	
 	public double evaluateObservation(List<int[]> observationSeq) {
-		double[][] obsSeq = new double[observationSeq.size()][observationSize];
-		for (int i = 0; i < observationSeq.size(); i++) {
-			for (int j = 0; j < observationSize; j++) {
-				obsSeq[i][j] = observationSeq.get(i)[j];
-			}
-		}
-		return evaluateObservation(obsSeq);
+		return evaluateObservation(FeatureMatrix.fromVectors(observationSeq));
 	}
 	
 	public double evaluateObservation(double[][] observationSeq) {
+		return evaluateObservation(FeatureMatrix.fromRows(observationSeq));
+	}
+	
+	/**
+	 * Evaluates the observation sequence against the model, reading the first observationSize
+	 * components of each frame in place.
+	 *
+	 * @param observationSeq to evaluate
+	 * @return the probability of the observation sequence given this model
+	 */
+	public double evaluateObservation(FeatureMatrix observationSeq) {
 		currentObservationSeq = observationSeq;
-		double[][] logForwardProbs = computeForwardProbabilities(observationSeq);
+		final double[][] logEmissions = computeEmissions(observationSeq);
+		double[][] logForwardProbs = computeForwardProbabilities(logEmissions, observationSeq);
         System.out.println("e^" + logMath.logToLn(logForwardProbs[9][5]));
-		return logMath.logToLinear(logForwardProbs[observationSeq.length][numStates-1]);
+		return logMath.logToLinear(logForwardProbs[observationSeq.getNumFrames()][numStates-1]);
+	}
+	
+	/**
+	 * Evaluates the observation sequence against the model by the forward algorithm without
+	 * leaving the log domain, so the result does not underflow.
+	 *
+	 * @param observationSeq to evaluate
+	 * @return the natural log of the probability of the observation sequence given this model
+	 */
+	public double evaluateLogObservation(FeatureMatrix observationSeq) {
+		currentObservationSeq = observationSeq;
+		final double[][] logEmissions = computeEmissions(observationSeq);
+		double[][] logForwardProbs = computeForwardProbabilities(logEmissions, observationSeq);
+		return logMath.logToLn(logForwardProbs[observationSeq.getNumFrames()][numStates-1]);
+	}
+	
+	/**
+	 * Finds the most likely path through the model for the observation sequence, see
+	 * {@link ViterbiDecoder}.
+	 */
+	public ViterbiDecoder.Result decode(FeatureMatrix observationSeq) {
+		return new ViterbiDecoder().decode(this, observationSeq);
 	}
 	
 	public void train(List<int[]> observationSeq) {
-		double[][] obsSeq = new double[observationSeq.size()][observationSize];
-		for (int i = 0; i < observationSeq.size(); i++) {
-			for (int j = 0; j < observationSize; j++) {
-				obsSeq[i][j] = observationSeq.get(i)[j];
-			}
-		}
-		train(obsSeq);
+		train(FeatureMatrix.fromVectors(observationSeq));
 	}
 	
 	public void train(double[][] observationSeq) {
+		train(FeatureMatrix.fromRows(observationSeq));
+	}
+	
+	/**
+	 * Re-estimates the model parameters from the observation sequence, reading the first
+	 * observationSize components of each frame in place.
+	 *
+	 * @param observationSeq to train on
+	 */
+	public void train(FeatureMatrix observationSeq) {
 		currentObservationSeq = observationSeq;
-		double[][] logForwardProbs = computeForwardProbabilities(observationSeq);
-		double[][] logBackwardProbs = computeBackwardProbabilities(observationSeq);
-		double[][][] logArcProbs = computeArcProbabilities(logForwardProbs, logBackwardProbs, observationSeq);
+		final double[][] logEmissions = computeEmissions(observationSeq);
+		double[][] logForwardProbs = computeForwardProbabilities(logEmissions, observationSeq);
+		double[][] logBackwardProbs = computeBackwardProbabilities(logEmissions, observationSeq);
+		double[][][] logArcProbs = computeArcProbabilities(logEmissions, logForwardProbs, logBackwardProbs, observationSeq);
 		updateTransitionProbabilities(logArcProbs);
 		updateOutputParameters(logArcProbs, observationSeq);
+		outputParametersChanged();
+	}
+	
+	/**
+	 * @return an empty accumulator of the sufficient statistics of this model
+	 */
+	public BaumWelchAccumulator createAccumulator() {
+		return new BaumWelchAccumulator(numStates, observationSize);
 	}
 	
-	private double[][] computeForwardProbabilities(double[][] observationSeq) {
-		final int totalTime = observationSeq.length;
+	/**
+	 * Adds the expected arc occupancies and observation moments of the sequence under the
+	 * current parameters to the accumulator, without changing the model. Unlike
+	 * {@link #train(FeatureMatrix)}, this keeps its tables to itself and only reads the model,
+	 * so any number of sequences may be accumulated from different threads at once.
+	 *
+	 * @param observationSeq to accumulate
+	 * @param accumulator to add to
+	 */
+	public void accumulate(FeatureMatrix observationSeq, BaumWelchAccumulator accumulator) {
+		final int totalTime = observationSeq.getNumFrames();
+		double[][] logEmissions = new double[2*numStates - 1][totalTime];
+		fillEmissions(observationSeq, logEmissions);
+		double[][] logForwardProbs = computeForwardProbabilities(logEmissions, observationSeq);
+		final double logModelProbability = logForwardProbs[totalTime][numStates-1];
+		if (logModelProbability == Double.NEGATIVE_INFINITY || Double.isNaN(logModelProbability)) {
+			// too short to pass through every state, or impossible under the model
+			accumulator.addSkippedUtterance();
+			return;
+		}
+		double[][] logBackwardProbs = computeBackwardProbabilities(logEmissions, observationSeq);
+		final double[] observations = observationSeq.getData();
+		for (int t = 0; t < totalTime; t++) {
+			final int offset = observationSeq.getOffset(t);
+			// only the cells of the trellis on some path from the first state to the last are set
+			for (int s = 0; s <= t && s < numStates; s++) {
+				if ((numStates - 1) - s <= totalTime - (t + 1)) {
+					double logSelfArcProb = logForwardProbs[t][s]
+							+ logMath.linearToLog(transitionProbs[s][s])
+							+ getLogEmission(logEmissions, s, s, t)
+							+ logBackwardProbs[t+1][s]
+							- logModelProbability;
+					accumulator.addArcOccupancy(getArcIndex(s, s), logMath.logToLinear(logSelfArcProb), observations, offset);
+				}
+				if (s < numStates - 1 && (numStates - 1) - (s + 1) <= totalTime - (t + 1)) {
+					double logNextStateArcProb = logForwardProbs[t][s]
+							+ logMath.linearToLog(transitionProbs[s][s+1])
+							+ getLogEmission(logEmissions, s, s+1, t)
+							+ logBackwardProbs[t+1][s+1]
+							- logModelProbability;
+					accumulator.addArcOccupancy(getArcIndex(s, s+1), logMath.logToLinear(logNextStateArcProb), observations, offset);
+				}
+			}
+		}
+		accumulator.addUtterance(logMath.logToLn(logModelProbability), totalTime);
+	}
+	
+	/**
+	 * Recomputes anything derived from the output parameters. Must be called whenever the
+	 * output parameters change other than by training, such as when they are modified in place
+	 * through their getters.
+	 */
+	public void outputParametersChanged() {
+		onOutputParametersChanged();
+	}
+	
+	/**
+	 * Called whenever the output parameters have changed, so that anything derived from them
+	 * can be recomputed before the next output probability is.
+	 */
+	protected void onOutputParametersChanged() {
+		// nothing derived by default
+	}
+	
+	/**
+	 * Evaluates the output probability of every arc of the linear topology at every frame of
+	 * the sequence once, so the forward, backward and arc passes of one call all read them from
+	 * a table. The table is filled afresh on every call, since the sequence may have been
+	 * modified in place since the last one.
+	 */
+	private double[][] computeEmissions(FeatureMatrix observationSeq) {
+		final int totalTime = observationSeq.getNumFrames();
+		if (logEmissions == null || logEmissions[0].length < totalTime) {
+			logEmissions = new double[2*numStates - 1][totalTime];
+		}
+		fillEmissions(observationSeq, logEmissions);
+		return logEmissions;
+	}
+	
+	private void fillEmissions(FeatureMatrix observationSeq, double[][] logEmissions) {
+		final int totalTime = observationSeq.getNumFrames();
+		for (int s = 0; s < numStates; s++) {
+			for (int t = 0; t < totalTime; t++) {
+				logEmissions[getArcIndex(s, s)][t] = computeOutputProbability(s, s, observationSeq, t);
+			}
+			if (s < numStates - 1) {
+				for (int t = 0; t < totalTime; t++) {
+					logEmissions[getArcIndex(s, s+1)][t] = computeOutputProbability(s, s+1, observationSeq, t);
+				}
+			}
+		}
+	}
+	
+	// the self arc of state s is arc 2s, and the arc on to the next state is arc 2s+1
+	static int getArcIndex(int state1, int state2) {
+		return 2*state1 + (state2 - state1);
+	}
+	
+	private static double getLogEmission(double[][] logEmissions, int state1, int state2, int timeStep) {
+		return logEmissions[getArcIndex(state1, state2)][timeStep];
+	}
+	
+	private double[][] computeForwardProbabilities(double[][] logEmissions, FeatureMatrix observationSeq) {
+		final int totalTime = observationSeq.getNumFrames();
 		double[][] logForwardProbs = new double[totalTime + 1][numStates];
 		// initialize the base case at state #1
 		logForwardProbs[0][0] = LogMath.LOG_ONE;
@@ -86,12 +234,12 @@ public abstract class HiddenMarkovModel {
 				if (s > 0 && t - s >= 0) {
 					logSum = logForwardProbs[t-1][s-1]
 							+ logMath.linearToLog(transitionProbs[s-1][s])
-							+ computeOutputProbability(s-1, s, t-1);
+							+ getLogEmission(logEmissions, s-1, s, t-1);
 				}
 				if (t - s >= 1) {
 					double logSecondComponent = logForwardProbs[t-1][s]
 							+ logMath.linearToLog(transitionProbs[s][s])
-							+ computeOutputProbability(s, s, t-1);
+							+ getLogEmission(logEmissions, s, s, t-1);
 					if (logSum == Double.NEGATIVE_INFINITY) {
 						logSum = logSecondComponent;
 					} else {
@@ -105,8 +253,8 @@ public abstract class HiddenMarkovModel {
 		return logForwardProbs;
 	}
 	
-	private double[][] computeBackwardProbabilities(double[][] observationSeq) {
-		final int totalTime = observationSeq.length;
+	private double[][] computeBackwardProbabilities(double[][] logEmissions, FeatureMatrix observationSeq) {
+		final int totalTime = observationSeq.getNumFrames();
 		double[][] logBackwardProbs = new double[totalTime + 1][numStates];
 		// initialize the base case at state #1
 		logBackwardProbs[totalTime][numStates-1] = LogMath.LOG_ONE;
@@ -119,12 +267,12 @@ public abstract class HiddenMarkovModel {
 				if (s < numStates-1 && t + ((numStates - 1) - s) <= totalTime) {
 					logSum = logBackwardProbs[t+1][s+1]
 							+ logMath.linearToLog(transitionProbs[s][s+1])
-							+ computeOutputProbability(s, s+1, t);
+							+ getLogEmission(logEmissions, s, s+1, t);
 				}
 				if (t + ((numStates - 1) - s) <= totalTime - 1) {
 					double logSecondComponent = logBackwardProbs[t+1][s]
 							+ logMath.linearToLog(transitionProbs[s][s])
-							+ computeOutputProbability(s, s, t);
+							+ getLogEmission(logEmissions, s, s, t);
 					if (logSum == Double.NEGATIVE_INFINITY) {
 						logSum = logSecondComponent;
 					} else {
@@ -138,7 +286,7 @@ public abstract class HiddenMarkovModel {
 		return logBackwardProbs;
 	}
 	
-	private double[][][] computeArcProbabilities(double[][] logForwardProbs, double[][] logBackwardProbs, double[][] observationSeq) {
+	private double[][][] computeArcProbabilities(double[][] logEmissions, double[][] logForwardProbs, double[][] logBackwardProbs, FeatureMatrix observationSeq) {
 		final int totalTime = logForwardProbs.length;
         final double logModelProbability = logForwardProbs[totalTime-1][numStates-1];
 		double[][][] logArcProbs = new double[numStates][numStates][totalTime-1];
@@ -150,7 +298,7 @@ public abstract class HiddenMarkovModel {
 				if (logForwardProbs[t][s] != 0.d && logBackwardProbs[t+1][s] != 0.d) {
 					double logSelfArcProb = logForwardProbs[t][s]
 							+ logMath.linearToLog(transitionProbs[s][s])
-							+ computeOutputProbability(s, s, t)
+							+ getLogEmission(logEmissions, s, s, t)
 							+ logBackwardProbs[t+1][s]
                             - logModelProbability;
 					//System.out.println("Arc probability (" + s + ", " + s + ", " + t + "): " + logSelfArcProb);
@@ -161,7 +309,7 @@ public abstract class HiddenMarkovModel {
 						&& logBackwardProbs[t+1][s+1] != 0.d) {
 					double logNextStateArcProb = logForwardProbs[t][s+1]
 							+ logMath.linearToLog(transitionProbs[s][s+1])
-							+ computeOutputProbability(s, s+1, t)
+							+ getLogEmission(logEmissions, s, s+1, t)
 							+ logBackwardProbs[t+1][s+1]
                             - logModelProbability;
 					//System.out.println("Arc probability (" + s + ", " + (s+1) + ", " + t + "): " + logNextStateArcProb);
@@ -225,8 +373,18 @@ public abstract class HiddenMarkovModel {
         }
     }
 	
-	protected abstract void updateOutputParameters(double[][][] arcProbs, double[][] observationSeq);
+	protected abstract void updateOutputParameters(double[][][] arcProbs, FeatureMatrix observationSeq);
 	
-	protected abstract double computeOutputProbability(int state1, int state2, int observationNum);
+	/**
+	 * Computes the log output probability of a frame on the arc between two states. Must only
+	 * read the model, so that it may be called from several threads at once.
+	 *
+	 * @param state1 the state the arc leaves
+	 * @param state2 the state the arc enters
+	 * @param observationSeq holding the frame
+	 * @param observationNum the index of the frame
+	 * @return the output probability in the log base of the model's {@link LogMath}
+	 */
+	protected abstract double computeOutputProbability(int state1, int state2, FeatureMatrix observationSeq, int observationNum);
 
 }
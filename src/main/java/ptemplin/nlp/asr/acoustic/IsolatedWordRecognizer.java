@@ -0,0 +1,183 @@
+package ptemplin.nlp.asr.acoustic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.SpectralAnalyzer;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.HmmStateIO;
+
+/**
+ * Recognizes isolated words by scoring an utterance against the model of every word of a
+ * vocabulary in parallel and ranking the words by the Viterbi score of their best path. The
+ * features of the utterance are computed once and shared by every model. The recognizer holds
+ * its own snapshots of the models, which are never modified after construction, so the caller
+ * may keep training its models, and the snapshots are only read by the workers, each of which
+ * decodes with its own scratch buffers. Any number of threads may recognize at once.
+ */
+public class IsolatedWordRecognizer implements AutoCloseable {
+	
+	// the number of work items per worker, to balance models of differing cost
+	private static final int CHUNKS_PER_WORKER = 4;
+	
+	private final String[] words;
+	private final ContinuousHMM[] models;
+	private final ForkJoinPool pool;
+	private final int numChunks;
+	private final ThreadLocal<ViterbiDecoder> workerDecoders;
+	private final ThreadLocal<SpectralAnalyzer> callerAnalyzers;
+	
+	public IsolatedWordRecognizer(Map<String, ContinuousHMM> vocabulary) {
+		this(vocabulary, Runtime.getRuntime().availableProcessors(), ViterbiDecoder.DEFAULT_BEAM,
+				() -> new LincolnFrontend(true));
+	}
+	
+	/**
+	 * @param vocabulary the model of each word, which is copied
+	 * @param parallelism the number of workers
+	 * @param beam of the decoder, see {@link ViterbiDecoder#ViterbiDecoder(double)}
+	 * @param analyzerFactory creates the analyzer of each thread recognizing speech, which must
+	 *        match the analyzer the models were trained on
+	 */
+	public IsolatedWordRecognizer(Map<String, ContinuousHMM> vocabulary, int parallelism, double beam,
+			Supplier<? extends SpectralAnalyzer> analyzerFactory) {
+		if (vocabulary.isEmpty()) {
+			throw new IllegalArgumentException("Vocabulary is empty");
+		}
+		this.words = new String[vocabulary.size()];
+		this.models = new ContinuousHMM[vocabulary.size()];
+		int index = 0;
+		for (Map.Entry<String, ContinuousHMM> entry : vocabulary.entrySet()) {
+			words[index] = entry.getKey();
+			models[index] = new ContinuousHMM();
+			entry.getValue().copyParametersTo(models[index]);
+			index++;
+		}
+		this.pool = new ForkJoinPool(parallelism);
+		this.numChunks = Math.min(models.length, parallelism*CHUNKS_PER_WORKER);
+		this.workerDecoders = ThreadLocal.withInitial(() -> new ViterbiDecoder(beam));
+		this.callerAnalyzers = ThreadLocal.withInitial(analyzerFactory);
+	}
+	
+	/**
+	 * Creates a recognizer of every model saved in the binary format in the directory, named
+	 * by their file names.
+	 */
+	public static IsolatedWordRecognizer load(String dir) throws IOException {
+		return new IsolatedWordRecognizer(HmmStateIO.loadAllBinaryHMMStates(dir));
+	}
+	
+	/**
+	 * Trims the silence around the speech, as is done to the training data, and recognizes it.
+	 *
+	 * @param speech samples at the analysis sample rate
+	 * @param nBest the maximum number of hypotheses returned
+	 * @return the best hypotheses, best first
+	 */
+	public List<Hypothesis> recognize(int[] speech, int nBest) throws IOException {
+		int[] trimmedSpeech = SilenceProcessor.trimSilence(speech);
+		return recognize(callerAnalyzers.get().computeFeatureMatrix(trimmedSpeech), nBest);
+	}
+	
+	/**
+	 * Scores the observation sequence against every model.
+	 *
+	 * @param observationSeq to recognize
+	 * @param nBest the maximum number of hypotheses returned
+	 * @return the best hypotheses, best first, ties broken by word; words whose models have more
+	 *         states than the sequence can pass through score negative infinity
+	 * @throws IOException if decoding failed
+	 */
+	public List<Hypothesis> recognize(FeatureMatrix observationSeq, int nBest) throws IOException {
+		final double[] logLikelihoods = new double[models.length];
+		List<Callable<Void>> tasks = new ArrayList<>(numChunks);
+		for (int chunk = 0; chunk < numChunks; chunk++) {
+			final int first = (int) ((long) chunk*models.length/numChunks);
+			final int last = (int) ((long) (chunk + 1)*models.length/numChunks);
+			tasks.add(() -> {
+				ViterbiDecoder decoder = workerDecoders.get();
+				for (int i = first; i < last; i++) {
+					logLikelihoods[i] = decoder.decode(models[i], observationSeq).getLogLikelihood();
+				}
+				return null;
+			});
+		}
+		for (Future<Void> result : pool.invokeAll(tasks)) {
+			try {
+				result.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while recognizing", ex);
+			} catch (ExecutionException ex) {
+				throw new IOException("Failed to recognize", ex.getCause());
+			}
+		}
+		List<Hypothesis> hypotheses = new ArrayList<>(models.length);
+		for (int i = 0; i < models.length; i++) {
+			hypotheses.add(new Hypothesis(words[i], logLikelihoods[i]));
+		}
+		Collections.sort(hypotheses);
+		return hypotheses.subList(0, Math.min(nBest, hypotheses.size()));
+	}
+	
+	/**
+	 * @return the words of the vocabulary, in the order of the map they were given in
+	 */
+	public List<String> getWords() {
+		return Collections.unmodifiableList(Arrays.asList(words));
+	}
+	
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * A word and the score of the utterance against its model.
+	 */
+	public static class Hypothesis implements Comparable<Hypothesis> {
+		
+		private final String word;
+		private final double logLikelihood;
+		
+		private Hypothesis(String word, double logLikelihood) {
+			this.word = word;
+			this.logLikelihood = logLikelihood;
+		}
+		
+		public String getWord() {
+			return word;
+		}
+		
+		/**
+		 * @return the natural log of the probability of the best path through the word's model
+		 */
+		public double getLogLikelihood() {
+			return logLikelihood;
+		}
+		
+		@Override
+		public int compareTo(Hypothesis other) {
+			int byScore = Double.compare(other.logLikelihood, logLikelihood);
+			return byScore != 0 ? byScore : word.compareTo(other.word);
+		}
+		
+		@Override
+		public String toString() {
+			return word + " (" + logLikelihood + ")";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,206 @@
+package ptemplin.nlp.asr.acoustic;
+
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.util.LogMath;
+
+/**
+ * Finds the single most likely path through a {@link HiddenMarkovModel} for an observation
+ * sequence, taking the maximum over the predecessors of each state where the forward algorithm
+ * sums them. After each frame, states from which the last state can no longer be reached in the
+ * frames left are dropped, states scoring more than the beam below the best remaining state are
+ * pruned, and the output probabilities are only computed on arcs leaving states which are
+ * still active, so the work per frame shrinks to the part of the model the path could be in.
+ * <p>
+ * Since every state of the linear topology is entered either from itself or from the state
+ * before it, a backpointer is a single bit, and the backpointers of a frame are packed into one
+ * long. A decoder keeps its scratch buffers between sequences and is not thread-safe, but the
+ * models it decodes against are only read, so one decoder per thread may share models.
+ */
+public class ViterbiDecoder {
+	
+	// in nats; frames of the Lincoln features score around -100 nats each, and narrower beams
+	// than this were found to lose the best path on the training data
+	public static final double DEFAULT_BEAM = 500;
+	
+	private static final int MAX_NUM_STATES = Long.SIZE;
+	
+	private final double beam;
+	private final LogMath logMath;
+	
+	private double[] logScores = new double[0];
+	private double[] nextLogScores = new double[0];
+	private double[] logSelfTransitions = new double[0];
+	private double[] logNextTransitions = new double[0];
+	// bit s of frame t is set if the best path into state s after frame t came from state s-1
+	private long[] backpointers = new long[0];
+	
+	public ViterbiDecoder() {
+		this(DEFAULT_BEAM);
+	}
+	
+	/**
+	 * @param beam how far below the best state, in nats, a state may score and stay active, or
+	 *        {@link Double#POSITIVE_INFINITY} to never prune
+	 */
+	public ViterbiDecoder(double beam) {
+		if (!(beam > 0)) {
+			throw new IllegalArgumentException("Beam must be positive: " + beam);
+		}
+		this.beam = beam;
+		this.logMath = LogMath.getLogMath();
+	}
+	
+	/**
+	 * Decodes the observation sequence, starting in the first state and ending in the last.
+	 *
+	 * @param model to decode against
+	 * @param observationSeq to decode
+	 * @return the score and state alignment of the best path
+	 */
+	public Result decode(HiddenMarkovModel model, FeatureMatrix observationSeq) {
+		if (model.numStates > MAX_NUM_STATES) {
+			throw new IllegalArgumentException("Too many states to decode: " + model.numStates);
+		}
+		final double logBeam = beam == Double.POSITIVE_INFINITY ? beam : logMath.lnToLog(beam);
+		final int numStates = model.numStates;
+		final int totalTime = observationSeq.getNumFrames();
+		ensureCapacity(numStates, totalTime);
+		for (int s = 0; s < numStates; s++) {
+			logSelfTransitions[s] = logMath.linearToLog(model.transitionProbs[s][s]);
+			if (s < numStates - 1) {
+				logNextTransitions[s] = logMath.linearToLog(model.transitionProbs[s][s+1]);
+			}
+		}
+		for (int s = 0; s < numStates; s++) {
+			logScores[s] = Double.NEGATIVE_INFINITY;
+		}
+		logScores[0] = LogMath.LOG_ONE;
+		// the active states are firstActive to lastActive, with any pruned ones between at -infinity
+		int firstActive = 0;
+		int lastActive = 0;
+		long numActive = 0;
+		for (int t = 0; t < totalTime; t++) {
+			// states from which the last state can no longer be reached in the frames left are
+			// dropped, so the beam is only taken over states which can still end the path
+			int nextFirst = Math.max(firstActive, numStates - 1 - (totalTime - 1 - t));
+			int nextLast = Math.min(lastActive + 1, numStates - 1);
+			if (nextFirst > nextLast) {
+				// the sequence is too short to reach the last state
+				return new Result(Double.NEGATIVE_INFINITY, null, numActive);
+			}
+			long pointers = 0;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (int s = nextFirst; s <= nextLast; s++) {
+				double score = Double.NEGATIVE_INFINITY;
+				if (s <= lastActive && logScores[s] != Double.NEGATIVE_INFINITY) {
+					score = logScores[s] + logSelfTransitions[s]
+							+ model.computeOutputProbability(s, s, observationSeq, t);
+				}
+				if (s > firstActive && logScores[s-1] != Double.NEGATIVE_INFINITY) {
+					double enterScore = logScores[s-1] + logNextTransitions[s-1]
+							+ model.computeOutputProbability(s-1, s, observationSeq, t);
+					if (enterScore > score) {
+						score = enterScore;
+						pointers |= 1L << s;
+					}
+				}
+				nextLogScores[s] = score;
+				bestScore = Math.max(bestScore, score);
+			}
+			backpointers[t] = pointers;
+			if (bestScore == Double.NEGATIVE_INFINITY) {
+				return new Result(Double.NEGATIVE_INFINITY, null, numActive);
+			}
+			// prune, narrowing the active range past pruned states at either end
+			double threshold = bestScore - logBeam;
+			firstActive = -1;
+			for (int s = nextFirst; s <= nextLast; s++) {
+				if (nextLogScores[s] < threshold) {
+					nextLogScores[s] = Double.NEGATIVE_INFINITY;
+				} else {
+					if (firstActive < 0) {
+						firstActive = s;
+					}
+					lastActive = s;
+					numActive++;
+				}
+			}
+			double[] swap = logScores;
+			logScores = nextLogScores;
+			nextLogScores = swap;
+		}
+		double finalScore = logScores[numStates - 1];
+		if (lastActive != numStates - 1 || finalScore == Double.NEGATIVE_INFINITY) {
+			return new Result(Double.NEGATIVE_INFINITY, null, numActive);
+		}
+		int[] stateAlignment = new int[totalTime];
+		int state = numStates - 1;
+		for (int t = totalTime - 1; t >= 0; t--) {
+			stateAlignment[t] = state;
+			if ((backpointers[t] & (1L << state)) != 0) {
+				state--;
+			}
+		}
+		return new Result(logMath.logToLn(finalScore), stateAlignment, numActive);
+	}
+	
+	private void ensureCapacity(int numStates, int totalTime) {
+		if (logScores.length < numStates) {
+			logScores = new double[numStates];
+			nextLogScores = new double[numStates];
+			logSelfTransitions = new double[numStates];
+			logNextTransitions = new double[numStates];
+		}
+		if (backpointers.length < totalTime) {
+			backpointers = new long[totalTime];
+		}
+	}
+	
+	public double getBeam() {
+		return beam;
+	}
+	
+	/**
+	 * The best path found by a decoder.
+	 */
+	public static class Result {
+		
+		private final double logLikelihood;
+		private final int[] stateAlignment;
+		private final long numActiveStates;
+		
+		private Result(double logLikelihood, int[] stateAlignment, long numActiveStates) {
+			this.logLikelihood = logLikelihood;
+			this.stateAlignment = stateAlignment;
+			this.numActiveStates = numActiveStates;
+		}
+		
+		/**
+		 * @return the natural log of the probability of the best path, or negative infinity if
+		 *         the sequence is too short to reach the last state
+		 */
+		public double getLogLikelihood() {
+			return logLikelihood;
+		}
+		
+		/**
+		 * @return the state the best path is in after each frame, or null if there is no path
+		 */
+		public int[] getStateAlignment() {
+			return stateAlignment;
+		}
+		
+		/**
+		 * @return the number of states left active after pruning, summed over every frame
+		 */
+		public long getNumActiveStates() {
+			return numActiveStates;
+		}
+		
+		public boolean hasPath() {
+			return stateAlignment != null;
+		}
+		
+	}
+	
+}
@@ -11,4 +11,11 @@ public final class Constants {
     public static final String WORD_SPEECH_SAMPLE_DIR = RES_DIR + "speechsample/word/";
     public static final String PHONEME_SPEECH_SAMPLE_DIR = RES_DIR + "speechsample/phone/";
 
+    // the sample rate all recordings are resampled to for analysis
+    public static final int ANALYSIS_SAMPLE_RATE = 12000;
+
+    public static final String TMP_DIR = "tmp/";
+    public static final String FEATURE_CACHE_DIR = TMP_DIR + "featurecache/";
+    public static final String CORPUS_ARCHIVE_PATH = TMP_DIR + "speechsample.corpus";
+
 }
@@ -3,49 +3,71 @@ package ptemplin.nlp.asr.clustering;
 import java.util.ArrayList;
 import java.util.List;
 
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+
 public class KMeans {
 	
 	private static final int CLUSTER_STEPS = 500;
 	
 	public static List<double[]> cluster(List<int[]> data, int k) {
+		return cluster(FeatureMatrix.fromVectors(data), k);
+	}
+	
+	/**
+	 * Clusters the frames of the matrix, reading each frame in place.
+	 *
+	 * @param data whose frames are to be clustered
+	 * @param k the number of clusters
+	 * @return the mean of each cluster
+	 */
+	public static List<double[]> cluster(FeatureMatrix data, int k) {
+		final int numPoints = data.getNumFrames();
+		final int dimensionality = data.getDimension();
+		final double[] points = data.getData();
 		// initialize means to k random points in the dataset
 		List<double[]> means = new ArrayList<>();
 		for (int i = 0; i < k; i++) {
-			means.add(intArrToDoubleArr(data.get((int) (Math.random()*data.size()))));
+			means.add(data.getFrame((int) (Math.random()*numPoints)));
 		}
 		// perform the clustering
+		int[] assignments = new int[numPoints];
+		int[] clusterSizes = new int[k];
+		double[] sums = new double[dimensionality];
 		int stepNum = 1;
 		while (stepNum <= CLUSTER_STEPS) {
 			stepNum++;
 			// assignment
-			List<List<int[]>> clusters = new ArrayList<>();
-			for (int i = 0; i < k; i++) {
-				clusters.add(new ArrayList<int[]>());
-			}
-			for (int[] dataPiece : data) {
+			for (int point = 0; point < numPoints; point++) {
 				int bestCluster = 0;
 				double shortestDistance = Integer.MAX_VALUE;
 				for (int i = 0; i < means.size(); i++) {
-					double distance = getEuclideanDistance(dataPiece, means.get(i));
+					double distance = getEuclideanDistance(points, data.getOffset(point), dimensionality, means.get(i));
 					if (distance < shortestDistance) {
 						shortestDistance = distance;
 						bestCluster = i;
 					}
 				}
-				clusters.get(bestCluster).add(dataPiece);
+				assignments[point] = bestCluster;
 			}
 			// update means
 			for (int i = 0; i < means.size(); i++) {
-				List<int[]> cluster = clusters.get(i);
 				double[] mean = means.get(i);
-				int dimensionality = mean.length;
+				clusterSizes[i] = 0;
 				for (int dimension = 0; dimension < dimensionality; dimension++) {
-					int sum = 0;
-					for (int dataPoint = 0; dataPoint < cluster.size(); dataPoint++) {
-						sum += cluster.get(dataPoint)[dimension];
+					sums[dimension] = 0;
+				}
+				for (int point = 0; point < numPoints; point++) {
+					if (assignments[point] == i) {
+						clusterSizes[i]++;
+						int offset = data.getOffset(point);
+						for (int dimension = 0; dimension < dimensionality; dimension++) {
+							sums[dimension] += points[offset + dimension];
+						}
 					}
-					if (!cluster.isEmpty()) {
-						mean[dimension] = sum / (double) cluster.size();
+				}
+				if (clusterSizes[i] != 0) {
+					for (int dimension = 0; dimension < dimensionality; dimension++) {
+						mean[dimension] = sums[dimension] / clusterSizes[i];
 					}
 				}
 			}
@@ -61,12 +83,15 @@ public class KMeans {
 		return Math.sqrt(sum);
 	}
 	
-	private static double[] intArrToDoubleArr(int[] intArr) {
-		double[] doubleArr = new double[intArr.length];
-		for (int i=0;i<intArr.length;i++) {
-			doubleArr[i] = intArr[i];
+	/**
+	 * @return the distance from the mean of the length components of data from the offset onwards
+	 */
+	public static double getEuclideanDistance(double[] data, int offset, int length, double[] mean) {
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.pow(data[offset + i]-mean[i], 2);
 		}
-		return doubleArr;
+		return Math.sqrt(sum);
 	}
 	
 }
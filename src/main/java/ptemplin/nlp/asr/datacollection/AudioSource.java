@@ -0,0 +1,39 @@
+package ptemplin.nlp.asr.datacollection;
+
+import java.io.IOException;
+
+/**
+ * A source of 16-bit PCM audio delivered in interleaved frames, such as a microphone or a
+ * recording played back in its place.
+ */
+public interface AudioSource extends AutoCloseable {
+
+    int getSampleRate();
+
+    int getNumChannels();
+
+    /**
+     * Starts delivering audio. Frames are only available to {@link #read} after this is called.
+     *
+     * @throws IOException if the source could not be started
+     */
+    void start() throws IOException;
+
+    /**
+     * Reads the next frames, blocking until at least one is available.
+     *
+     * @param buffer to write the interleaved samples of the frames to
+     * @param offset of the first sample written
+     * @param maxFrames the maximum number of frames to read
+     * @return the number of frames read, or -1 if the source has ended
+     * @throws IOException if the audio could not be read
+     */
+    int read(short[] buffer, int offset, int maxFrames) throws IOException;
+
+    /**
+     * Stops the source and releases any device it holds.
+     */
+    @Override
+    void close() throws IOException;
+
+}
@@ -0,0 +1,187 @@
+package ptemplin.nlp.asr.datacollection;
+
+import java.io.IOException;
+
+import ptemplin.nlp.asr.frontend.FeatureFrameListener;
+import ptemplin.nlp.asr.frontend.PolyphaseResampler;
+import ptemplin.nlp.asr.frontend.StreamingSpectralAnalyzer;
+import ptemplin.nlp.asr.frontend.lincoln.StreamingLincolnFrontend;
+
+import static ptemplin.nlp.asr.application.Constants.ANALYSIS_SAMPLE_RATE;
+
+/**
+ * Captures audio continuously and analyzes it while it is being captured. A capture thread
+ * reads the first channel of the source into a {@link PcmRingBuffer}, and an analysis thread
+ * drains the buffer, resamples it to {@link ptemplin.nlp.asr.application.Constants#ANALYSIS_SAMPLE_RATE} and streams it through the
+ * frontend, passing each frame of features to the listener, which may be the first stage of a
+ * feature pipeline followed by a decoder. The features are those that
+ * {@link ptemplin.nlp.asr.io.SpeechFileReader#readSpeechSamples(String)} followed by
+ * {@link ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend} would produce for a recording of
+ * the same audio, as long as the buffer never overruns.
+ */
+public class LiveCapture {
+	
+	public static final int DEFAULT_BUFFER_MILLIS = 2000;
+	// the audio read from the source at a time
+	private static final int CHUNK_MILLIS = 10;
+	
+	private final AudioSource source;
+	private final PcmRingBuffer ringBuffer;
+	private final PolyphaseResampler resampler;
+	private final StreamingSpectralAnalyzer analyzer;
+	private final int chunkFrames;
+	private final Thread captureThread;
+	private final Thread analysisThread;
+	
+	private volatile boolean stopped = false;
+	private volatile long numCapturedFrames = 0;
+	private volatile long numAnalyzedSamples = 0;
+	private volatile Exception failure = null;
+	
+	public LiveCapture(AudioSource source, FeatureFrameListener listener) {
+		this(source, DEFAULT_BUFFER_MILLIS, listener);
+	}
+	
+	/**
+	 * @param source of the audio
+	 * @param bufferMillis the amount of audio the analysis may fall behind the capture by
+	 *        before captured audio is dropped
+	 * @param listener of the frames of features
+	 */
+	public LiveCapture(AudioSource source, int bufferMillis, FeatureFrameListener listener) {
+		this.source = source;
+		this.ringBuffer = new PcmRingBuffer((int) ((long) bufferMillis*source.getSampleRate()/1000));
+		this.resampler = new PolyphaseResampler(source.getSampleRate(), ANALYSIS_SAMPLE_RATE);
+		this.analyzer = new StreamingLincolnFrontend(listener);
+		this.chunkFrames = Math.max(1, CHUNK_MILLIS*source.getSampleRate()/1000);
+		this.captureThread = new Thread(this::capture, "live-capture");
+		this.analysisThread = new Thread(this::analyze, "live-analysis");
+		captureThread.setDaemon(true);
+		analysisThread.setDaemon(true);
+	}
+	
+	/**
+	 * Starts the source and the capture and analysis threads.
+	 *
+	 * @throws IOException if the source could not be started
+	 */
+	public void start() throws IOException {
+		source.start();
+		captureThread.start();
+		analysisThread.start();
+	}
+	
+	/**
+	 * Stops capturing. The audio captured so far is still analyzed, after which the listener's
+	 * {@link FeatureFrameListener#onEnd()} is called.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+	
+	/**
+	 * Waits until the source has ended or capture has been stopped and all the captured audio
+	 * has been analyzed.
+	 *
+	 * @throws IOException if capturing or analyzing failed
+	 */
+	public void awaitCompletion() throws IOException, InterruptedException {
+		captureThread.join();
+		analysisThread.join();
+		if (failure != null) {
+			throw new IOException("Live capture failed", failure);
+		}
+	}
+	
+	private void capture() {
+		final int numChannels = source.getNumChannels();
+		short[] frames = new short[chunkFrames*numChannels];
+		short[] firstChannel = new short[chunkFrames];
+		try {
+			int numFrames;
+			while (!stopped && (numFrames = source.read(frames, 0, chunkFrames)) >= 0) {
+				for (int i = 0; i < numFrames; i++) {
+					firstChannel[i] = frames[i*numChannels];
+				}
+				ringBuffer.write(firstChannel, 0, numFrames);
+				numCapturedFrames += numFrames;
+			}
+		} catch (IOException | RuntimeException ex) {
+			// the buffer is still closed below, so the analysis ends on the audio captured so far
+			failure = ex;
+		} finally {
+			try {
+				source.close();
+			} catch (IOException ex) {
+				if (failure == null) {
+					failure = ex;
+				}
+			}
+			ringBuffer.close();
+		}
+	}
+	
+	private void analyze() {
+		int[] captured = new int[chunkFrames];
+		int[] resampled = new int[resampler.getMaxOutputLength(chunkFrames)];
+		try {
+			int numSamples;
+			while ((numSamples = ringBuffer.take(captured, 0, captured.length)) >= 0) {
+				emit(resampled, resampler.process(captured, 0, numSamples, resampled, 0));
+				numAnalyzedSamples += numSamples;
+			}
+			emit(resampled, resampler.end(resampled, 0));
+			analyzer.end();
+		} catch (InterruptedException ex) {
+			failure = ex;
+		} catch (RuntimeException ex) {
+			// from the frontend or the listener; nothing drains the buffer any more, so stop capturing
+			failure = ex;
+			stopped = true;
+		}
+	}
+	
+	private void emit(int[] samples, int length) {
+		// filtering can overshoot the range of the recording
+		for (int i = 0; i < length; i++) {
+			samples[i] = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, samples[i]));
+		}
+		analyzer.process(samples, 0, length);
+	}
+	
+	/**
+	 * @return the number of frames read from the source so far
+	 */
+	public long getNumCapturedFrames() {
+		return numCapturedFrames;
+	}
+	
+	/**
+	 * @return the number of captured samples analyzed so far
+	 */
+	public long getNumAnalyzedSamples() {
+		return numAnalyzedSamples;
+	}
+	
+	/**
+	 * @return the number of times captured audio did not fit in the buffer
+	 */
+	public long getNumOverruns() {
+		return ringBuffer.getNumOverruns();
+	}
+	
+	/**
+	 * @return the number of captured samples dropped by overruns
+	 */
+	public long getNumDroppedSamples() {
+		return ringBuffer.getNumDroppedSamples();
+	}
+	
+	/**
+	 * @return the number of times the analysis caught up with the capture and had to wait
+	 */
+	public long getNumUnderruns() {
+		return ringBuffer.getNumUnderruns();
+	}
+	
+}
@@ -0,0 +1,86 @@
+package ptemplin.nlp.asr.datacollection;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Captures little-endian 16-bit PCM audio from the default input line of the system.
+ */
+public class MicrophoneAudioSource implements AudioSource {
+
+	private final AudioFormat audioFormat;
+	private final int frameSize;
+	private TargetDataLine line;
+	private byte[] data = new byte[0];
+	
+	public MicrophoneAudioSource(AudioFormat audioFormat) {
+		if (audioFormat.getSampleSizeInBits() != 16 || audioFormat.isBigEndian()
+				|| !AudioFormat.Encoding.PCM_SIGNED.equals(audioFormat.getEncoding())) {
+			throw new IllegalArgumentException("Only signed little-endian 16-bit PCM is supported: " + audioFormat);
+		}
+		this.audioFormat = audioFormat;
+		this.frameSize = audioFormat.getFrameSize();
+	}
+	
+	@Override
+	public int getSampleRate() {
+		return (int) audioFormat.getSampleRate();
+	}
+	
+	@Override
+	public int getNumChannels() {
+		return audioFormat.getChannels();
+	}
+	
+	@Override
+	public void start() throws IOException {
+		DataLine.Info info = new DataLine.Info(TargetDataLine.class, audioFormat);
+		if (!AudioSystem.isLineSupported(info)) {
+			throw new IOException("Unsupported audio format: " + audioFormat);
+		}
+		try {
+			line = (TargetDataLine) AudioSystem.getLine(info);
+			line.open(audioFormat);
+		} catch (LineUnavailableException ex) {
+			throw new IOException("Audio line unavailable", ex);
+		}
+		line.start();
+	}
+	
+	@Override
+	public int read(short[] buffer, int offset, int maxFrames) throws IOException {
+		if (line == null) {
+			throw new IllegalStateException("Source has not been started");
+		}
+		if (!line.isOpen()) {
+			return -1;
+		}
+		int numBytes = maxFrames*frameSize;
+		if (data.length < numBytes) {
+			data = new byte[numBytes];
+		}
+		int numBytesRead = line.read(data, 0, numBytes);
+		if (numBytesRead <= 0) {
+			return line.isOpen() ? 0 : -1;
+		}
+		int numSamples = numBytesRead/Short.BYTES;
+		for (int i = 0; i < numSamples; i++) {
+			buffer[offset + i] = (short) ((data[2*i] & 0xff) | (data[2*i+1] << 8));
+		}
+		return numBytesRead/frameSize;
+	}
+	
+	@Override
+	public void close() {
+		if (line != null) {
+			line.stop();
+			line.close();
+		}
+	}
+	
+}
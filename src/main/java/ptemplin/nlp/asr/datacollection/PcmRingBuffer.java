@@ -0,0 +1,164 @@
+package ptemplin.nlp.asr.datacollection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free ring buffer of 16-bit PCM samples between exactly one producer thread, such as
+ * an audio capture loop, and one consumer thread. Each side only ever advances its own
+ * position, publishing it with a release store, and caches the other side's position so it
+ * only rereads it when the buffer looks full or empty.
+ * <p>
+ * A capture device cannot be paused, so the producer never blocks: samples which do not fit
+ * are dropped and counted as an overrun. The consumer polls, and each time it finds the buffer
+ * empty before the stream has ended counts as an underrun.
+ */
+public class PcmRingBuffer {
+	
+	// how long a waiting consumer parks between polls
+	private static final long POLL_NANOS = 200_000;
+	
+	private final short[] buffer;
+	private final int mask;
+	
+	// the absolute positions of the next sample to write and to read
+	private final AtomicLong writePosition = new AtomicLong();
+	private final AtomicLong readPosition = new AtomicLong();
+	private volatile boolean closed = false;
+	
+	// producer state
+	private long cachedReadPosition = 0;
+	private volatile long numOverruns = 0;
+	private volatile long numDroppedSamples = 0;
+	
+	// consumer state
+	private long cachedWritePosition = 0;
+	private volatile long numUnderruns = 0;
+	
+	/**
+	 * @param minCapacity the minimum number of samples held, rounded up to a power of two
+	 */
+	public PcmRingBuffer(int minCapacity) {
+		if (minCapacity <= 0 || minCapacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+		}
+		int capacity = Integer.highestOneBit(minCapacity);
+		if (capacity < minCapacity) {
+			capacity <<= 1;
+		}
+		this.buffer = new short[capacity];
+		this.mask = capacity - 1;
+	}
+	
+	/**
+	 * Writes as many of the samples as there is room for, dropping the rest. Called only by
+	 * the producer.
+	 *
+	 * @return the number of samples written
+	 */
+	public int write(short[] samples, int offset, int length) {
+		long write = writePosition.get();
+		if (buffer.length - (write - cachedReadPosition) < length) {
+			cachedReadPosition = readPosition.get();
+		}
+		int written = (int) Math.min(length, buffer.length - (write - cachedReadPosition));
+		if (written < length) {
+			numOverruns++;
+			numDroppedSamples += length - written;
+		}
+		int start = (int) write & mask;
+		int firstPart = Math.min(written, buffer.length - start);
+		System.arraycopy(samples, offset, buffer, start, firstPart);
+		System.arraycopy(samples, offset + firstPart, buffer, 0, written - firstPart);
+		writePosition.lazySet(write + written);
+		return written;
+	}
+	
+	/**
+	 * Marks the end of the stream once everything written so far is read. Called only by the
+	 * producer.
+	 */
+	public void close() {
+		closed = true;
+	}
+	
+	/**
+	 * Reads the available samples without waiting. Called only by the consumer.
+	 *
+	 * @param samples to write the samples to
+	 * @param offset of the first sample written
+	 * @param maxLength the maximum number of samples read
+	 * @return the number of samples read, which is 0 if the buffer is empty, or -1 if the
+	 *         stream has ended and every sample has been read
+	 */
+	public int poll(int[] samples, int offset, int maxLength) {
+		long read = readPosition.get();
+		if (cachedWritePosition == read) {
+			// the closed flag is set after the last write, so check it first
+			boolean ended = closed;
+			cachedWritePosition = writePosition.get();
+			if (cachedWritePosition == read) {
+				return ended ? -1 : 0;
+			}
+		}
+		int length = (int) Math.min(maxLength, cachedWritePosition - read);
+		for (int i = 0; i < length; i++) {
+			samples[offset + i] = buffer[(int) (read + i) & mask];
+		}
+		readPosition.lazySet(read + length);
+		return length;
+	}
+	
+	/**
+	 * Reads the available samples, waiting for at least one if the buffer is empty. Called only
+	 * by the consumer.
+	 *
+	 * @return the number of samples read, or -1 if the stream has ended and every sample has
+	 *         been read
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalArgumentException if maxLength is not positive, as nothing could be read
+	 */
+	public int take(int[] samples, int offset, int maxLength) throws InterruptedException {
+		if (maxLength <= 0) {
+			throw new IllegalArgumentException("Invalid length: " + maxLength);
+		}
+		int length = poll(samples, offset, maxLength);
+		if (length == 0) {
+			numUnderruns++;
+			do {
+				LockSupport.parkNanos(POLL_NANOS);
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				length = poll(samples, offset, maxLength);
+			} while (length == 0);
+		}
+		return length;
+	}
+	
+	public int getCapacity() {
+		return buffer.length;
+	}
+	
+	/**
+	 * @return the number of writes which did not fit in the buffer
+	 */
+	public long getNumOverruns() {
+		return numOverruns;
+	}
+	
+	/**
+	 * @return the number of samples dropped by overruns
+	 */
+	public long getNumDroppedSamples() {
+		return numDroppedSamples;
+	}
+	
+	/**
+	 * @return the number of times the consumer had to wait for samples
+	 */
+	public long getNumUnderruns() {
+		return numUnderruns;
+	}
+	
+}
@@ -17,6 +17,8 @@ import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 
+import ptemplin.nlp.asr.frontend.FeatureFrameListener;
+
 import static ptemplin.nlp.asr.application.Constants.WORD_SPEECH_SAMPLE_DIR;
 
 public class SpeechRecorder {
@@ -98,6 +100,20 @@ public class SpeechRecorder {
 		return out.toByteArray();
 	}
 	
+	/**
+	 * Captures from the microphone continuously until the returned capture is stopped,
+	 * analyzing the audio as it arrives rather than after a fixed recording time.
+	 *
+	 * @param listener of the frames of features
+	 * @return the started capture
+	 * @throws IOException if the microphone could not be opened
+	 */
+	public LiveCapture captureContinuously(FeatureFrameListener listener) throws IOException {
+		LiveCapture capture = new LiveCapture(new MicrophoneAudioSource(audioFormat), listener);
+		capture.start();
+		return capture;
+	}
+	
 	public void writeAudioToFile(byte[] data, String dir, int recordingNum) {
 		File audioDir = new File(dir);
 		if (!audioDir.exists()) {
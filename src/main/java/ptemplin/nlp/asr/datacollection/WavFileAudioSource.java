@@ -0,0 +1,85 @@
+package ptemplin.nlp.asr.datacollection;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import ptemplin.nlp.asr.io.WavFile;
+
+/**
+ * Plays a WAV file back as an audio source. In real time, frames only become available at the
+ * rate of the recording after the source is started, so the file stands in for a microphone,
+ * and a read waits until all the frames it asks for have been "recorded". Otherwise the whole
+ * file is available immediately.
+ */
+public class WavFileAudioSource implements AudioSource {
+
+	private final WavFile wavFile;
+	private final ShortBuffer samples;
+	private final boolean realTime;
+	private long startNanos;
+	private int position;
+	private boolean started;
+	private volatile boolean closed;
+	
+	/**
+	 * @param wavFile to play back
+	 * @param realTime whether to deliver the frames at the sample rate of the file
+	 */
+	public WavFileAudioSource(WavFile wavFile, boolean realTime) {
+		this.wavFile = wavFile;
+		this.samples = wavFile.getSamples();
+		this.realTime = realTime;
+	}
+	
+	@Override
+	public int getSampleRate() {
+		return wavFile.getSampleRate();
+	}
+	
+	@Override
+	public int getNumChannels() {
+		return wavFile.getNumChannels();
+	}
+	
+	@Override
+	public void start() {
+		startNanos = System.nanoTime();
+		position = 0;
+		started = true;
+	}
+	
+	@Override
+	public int read(short[] buffer, int offset, int maxFrames) throws IOException {
+		if (!started) {
+			throw new IllegalStateException("Source has not been started");
+		}
+		int numFrames = Math.min(maxFrames, wavFile.getNumFrames() - position);
+		if (closed || numFrames <= 0) {
+			return -1;
+		}
+		if (realTime) {
+			// wait until the last of the frames would have been captured
+			long dueNanos = startNanos + TimeUnit.SECONDS.toNanos(position + numFrames)/getSampleRate();
+			long remainingNanos;
+			while ((remainingNanos = dueNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(remainingNanos);
+				if (Thread.interrupted()) {
+					throw new InterruptedIOException("Interrupted while playing back audio");
+				}
+			}
+		}
+		final int numChannels = getNumChannels();
+		samples.get(position*numChannels, buffer, offset, numFrames*numChannels);
+		position += numFrames;
+		return numFrames;
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+	}
+	
+}
@@ -0,0 +1,296 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.FeatureCache;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+
+/**
+ * Extracts the feature vectors of many speech files in parallel. Every file is read, trimmed
+ * of silence and analyzed on a worker of a fork-join pool, with each worker using its own
+ * analyzer, so analyzers which reuse their buffers may be used. If a cache directory is given,
+ * features are looked up by the content of each file before any audio is decoded.
+ * <p>
+ * Files may either be extracted as a whole batch, or prefetched a bounded number of files
+ * ahead of a consumer such as a training loop, see {@link #prefetch(List, int)}.
+ */
+public class BatchFeatureExtractor implements AutoCloseable {
+	
+	private final ForkJoinPool pool;
+	private final ThreadLocal<SpectralAnalyzer> workerAnalyzers;
+	private final SpeechFileReader reader;
+	private final FeatureCache cache;
+	
+	public BatchFeatureExtractor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public BatchFeatureExtractor(int parallelism) {
+		this(parallelism, () -> new LincolnFrontend(true));
+	}
+	
+	/**
+	 * @param parallelism the number of workers
+	 * @param analyzerFactory creates the analyzer of each worker
+	 */
+	public BatchFeatureExtractor(int parallelism, Supplier<? extends SpectralAnalyzer> analyzerFactory) {
+		this(parallelism, analyzerFactory, null);
+	}
+	
+	/**
+	 * @param parallelism the number of workers
+	 * @param analyzerFactory creates the analyzer of each worker
+	 * @param cacheDir the directory of the feature cache, or null to always compute features
+	 */
+	public BatchFeatureExtractor(int parallelism, Supplier<? extends SpectralAnalyzer> analyzerFactory, String cacheDir) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.workerAnalyzers = ThreadLocal.withInitial(analyzerFactory);
+		this.reader = new SpeechFileReader();
+		if (cacheDir != null) {
+			this.cache = new FeatureCache(cacheDir, getCacheConfiguration(analyzerFactory.get()));
+		} else {
+			this.cache = null;
+		}
+	}
+	
+	/**
+	 * Describes everything which affects the features of a speech file read, trimmed of
+	 * silence and analyzed as this extractor does, for keying a {@link FeatureCache}.
+	 *
+	 * @param analyzer computing the features
+	 * @return the configuration of the whole extraction
+	 */
+	public static String getCacheConfiguration(SpectralAnalyzer analyzer) {
+		return SpeechFileReader.getConfiguration() + " " + SilenceProcessor.getConfiguration()
+				+ " " + analyzer.getConfiguration();
+	}
+	
+	/**
+	 * Extracts the feature vectors of the training data samples numbered firstDataNum to
+	 * lastDataNum inclusive of the given word.
+	 */
+	public Result extractFeaturesForTrainingData(String dir, int firstDataNum, int lastDataNum) throws IOException {
+		List<String> filePaths = new ArrayList<>();
+		for (int dataNum = firstDataNum; dataNum <= lastDataNum; dataNum++) {
+			filePaths.add(SpeechFileReader.getTrainingDataFilePath(dir, dataNum));
+		}
+		return extractFeatures(filePaths);
+	}
+	
+	/**
+	 * Extracts the feature vectors of every given speech file.
+	 *
+	 * @param filePaths of the speech files
+	 * @return the feature matrix of each file, in the order of the paths
+	 * @throws IOException if any of the files could not be read
+	 */
+	public Result extractFeatures(List<String> filePaths) throws IOException {
+		long startTime = System.nanoTime();
+		List<Callable<FeatureMatrix>> tasks = new ArrayList<>(filePaths.size());
+		for (String filePath : filePaths) {
+			tasks.add(() -> extractFeatures(filePath));
+		}
+		List<FeatureMatrix> featureVectors = new ArrayList<>(filePaths.size());
+		for (Future<FeatureMatrix> result : pool.invokeAll(tasks)) {
+			try {
+				featureVectors.add(result.get());
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while extracting features", ex);
+			} catch (ExecutionException ex) {
+				throw new IOException("Failed to extract features", ex.getCause());
+			}
+		}
+		return new Result(featureVectors, System.nanoTime() - startTime);
+	}
+	
+	/**
+	 * Prefetches the feature vectors of the training data samples numbered firstDataNum to
+	 * lastDataNum inclusive of the given word.
+	 */
+	public Prefetcher prefetchTrainingData(String dir, int firstDataNum, int lastDataNum, int queueDepth) {
+		List<String> filePaths = new ArrayList<>();
+		for (int dataNum = firstDataNum; dataNum <= lastDataNum; dataNum++) {
+			filePaths.add(SpeechFileReader.getTrainingDataFilePath(dir, dataNum));
+		}
+		return prefetch(filePaths, queueDepth);
+	}
+	
+	/**
+	 * Starts extracting the feature vectors of the given speech files in order, keeping at most
+	 * queueDepth files in flight or waiting to be taken. A new file is only started once the
+	 * consumer takes a finished one, so a slow consumer holds back the workers rather than
+	 * piling up feature matrices.
+	 *
+	 * @param filePaths of the speech files
+	 * @param queueDepth the maximum number of files extracted ahead of the consumer
+	 */
+	public Prefetcher prefetch(List<String> filePaths, int queueDepth) {
+		if (queueDepth < 1) {
+			throw new IllegalArgumentException("Queue depth must be positive: " + queueDepth);
+		}
+		return new Prefetcher(filePaths, queueDepth);
+	}
+	
+	private FeatureMatrix extractFeatures(String filePath) throws Exception {
+		String key = null;
+		if (cache != null) {
+			key = cache.getKey(filePath);
+			FeatureMatrix cached = cache.load(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		int[] trimmedSpeech = SilenceProcessor.trimSilence(reader.readSpeechSamples(filePath));
+		FeatureMatrix features = workerAnalyzers.get().computeFeatureMatrix(trimmedSpeech);
+		if (cache != null) {
+			cache.store(key, features);
+		}
+		return features;
+	}
+	
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * Hands out the feature vectors of a list of files in order while the following files are
+	 * extracted in the background. The time the consumer spends blocked waiting on a file which
+	 * is not ready yet is recorded as stall time; a loader which rarely stalls has a deep enough
+	 * queue. Not thread safe, it is meant to be drained by a single consumer.
+	 */
+	public class Prefetcher implements AutoCloseable {
+		
+		private final List<String> filePaths;
+		private final int queueDepth;
+		private final Deque<Future<FeatureMatrix>> pending;
+		private int nextToSubmit = 0;
+		private int numTaken = 0;
+		private int numStalls = 0;
+		private long stallNanos = 0;
+		private boolean closed = false;
+		
+		private Prefetcher(List<String> filePaths, int queueDepth) {
+			this.filePaths = new ArrayList<>(filePaths);
+			this.queueDepth = queueDepth;
+			this.pending = new ArrayDeque<>(queueDepth);
+			fill();
+		}
+		
+		public boolean hasNext() {
+			return !closed && numTaken < filePaths.size();
+		}
+		
+		/**
+		 * Returns the feature vectors of the next file, blocking until they are extracted.
+		 *
+		 * @throws IOException if the file could not be read
+		 */
+		public FeatureMatrix next() throws IOException {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Future<FeatureMatrix> head = pending.poll();
+			numTaken++;
+			try {
+				if (!head.isDone()) {
+					long startTime = System.nanoTime();
+					numStalls++;
+					try {
+						return head.get();
+					} finally {
+						stallNanos += System.nanoTime() - startTime;
+					}
+				}
+				return head.get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while extracting features", ex);
+			} catch (ExecutionException ex) {
+				throw new IOException("Failed to extract features of " + filePaths.get(numTaken - 1), ex.getCause());
+			} finally {
+				fill();
+			}
+		}
+		
+		private void fill() {
+			while (!closed && pending.size() < queueDepth && nextToSubmit < filePaths.size()) {
+				String filePath = filePaths.get(nextToSubmit++);
+				pending.add(pool.submit(() -> extractFeatures(filePath)));
+			}
+		}
+		
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+		
+		/** @return the number of files taken by the consumer so far */
+		public int getNumTaken() {
+			return numTaken;
+		}
+		
+		/** @return the number of times the consumer had to wait for a file */
+		public int getNumStalls() {
+			return numStalls;
+		}
+		
+		/** @return the total time the consumer spent waiting for files */
+		public long getStallNanos() {
+			return stallNanos;
+		}
+		
+		/**
+		 * Cancels the files which have not been taken yet. The extractor itself stays open.
+		 */
+		@Override
+		public void close() {
+			for (Future<FeatureMatrix> future : pending) {
+				future.cancel(true);
+			}
+			pending.clear();
+			closed = true;
+		}
+		
+	}
+	
+	/**
+	 * The feature vectors extracted from a batch of files and the throughput of the batch.
+	 */
+	public static class Result {
+		
+		private final List<FeatureMatrix> featureVectors;
+		private final long elapsedNanos;
+		
+		private Result(List<FeatureMatrix> featureVectors, long elapsedNanos) {
+			this.featureVectors = featureVectors;
+			this.elapsedNanos = elapsedNanos;
+		}
+		
+		public List<FeatureMatrix> getFeatureVectors() {
+			return featureVectors;
+		}
+		
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+		
+		public double getFilesPerSecond() {
+			return featureVectors.size() / (elapsedNanos / 1e9);
+		}
+		
+	}
+	
+}
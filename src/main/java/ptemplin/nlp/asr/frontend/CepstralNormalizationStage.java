@@ -0,0 +1,236 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+
+/**
+ * Normalizes every component of the frames to zero mean and, optionally, unit variance,
+ * removing the offsets a particular channel or speaker adds to the cepstra. The statistics are
+ * computed in one of three ways:
+ *
+ * <ul>
+ * <li>over the whole utterance, holding every frame until {@link #onEnd()};</li>
+ * <li>over a sliding window of the most recent frames, including the current one;</li>
+ * <li>as exponentially decayed averages over all frames so far.</li>
+ * </ul>
+ *
+ * The two online modes pass every frame on as soon as it arrives. Early in the stream they
+ * normalize by statistics of however many frames have been seen, so the first frame always
+ * normalizes to zero.
+ */
+public class CepstralNormalizationStage implements FeatureFrameListener {
+	
+	public static final int DEFAULT_SLIDING_WINDOW = 300;
+	public static final double DEFAULT_DECAY = 0.995;
+	
+	// keeps components which never vary from dividing by zero
+	private static final double VARIANCE_FLOOR = 1e-10;
+	
+	private enum Mode { UTTERANCE, SLIDING_WINDOW, EXPONENTIAL }
+	
+	private final Mode mode;
+	private final int dimension;
+	private final boolean normalizeVariance;
+	private final FeatureFrameListener next;
+	// the window length for the sliding window mode
+	private final int window;
+	// the decay factor for the exponential mode
+	private final double decay;
+	
+	// the utterance so far in the utterance mode, or a ring of the last frames in the sliding mode
+	private double[] frames;
+	private final double[] sums;
+	private final double[] sumSquares;
+	private final double[] outputFrame;
+	// the total weight of the decayed averages
+	private double weight;
+	private long numFrames;
+	
+	private CepstralNormalizationStage(Mode mode, int dimension, boolean normalizeVariance,
+			int window, double decay, FeatureFrameListener next) {
+		this.mode = mode;
+		this.dimension = dimension;
+		this.normalizeVariance = normalizeVariance;
+		this.window = window;
+		this.decay = decay;
+		this.next = next;
+		this.frames = new double[(mode == Mode.SLIDING_WINDOW ? window : 16)*dimension];
+		this.sums = new double[dimension];
+		this.sumSquares = new double[dimension];
+		this.outputFrame = new double[dimension];
+		reset();
+	}
+	
+	/**
+	 * Creates a stage normalizing by the statistics of the whole utterance, which passes on
+	 * every frame at the end of the utterance.
+	 *
+	 * @param dimension of the frames
+	 * @param normalizeVariance whether to scale the components to unit variance as well
+	 * @param next listener to receive the normalized frames
+	 */
+	public static CepstralNormalizationStage createUtterance(int dimension, boolean normalizeVariance,
+			FeatureFrameListener next) {
+		return new CepstralNormalizationStage(Mode.UTTERANCE, dimension, normalizeVariance, 0, 0, next);
+	}
+	
+	/**
+	 * Creates a stage normalizing every frame by the statistics of it and the preceding frames
+	 * within the window, without delay.
+	 *
+	 * @param dimension of the frames
+	 * @param window the number of frames to compute statistics over
+	 * @param normalizeVariance whether to scale the components to unit variance as well
+	 * @param next listener to receive the normalized frames
+	 */
+	public static CepstralNormalizationStage createSlidingWindow(int dimension, int window, boolean normalizeVariance,
+			FeatureFrameListener next) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Normalization window must be at least 1: " + window);
+		}
+		return new CepstralNormalizationStage(Mode.SLIDING_WINDOW, dimension, normalizeVariance, window, 0, next);
+	}
+	
+	/**
+	 * Creates a stage normalizing every frame by exponentially decayed averages of it and the
+	 * preceding frames, without delay. Each frame's weight is decay times that of the frame
+	 * after it, so the averages cover about 1/(1-decay) frames.
+	 *
+	 * @param dimension of the frames
+	 * @param decay factor in (0, 1)
+	 * @param normalizeVariance whether to scale the components to unit variance as well
+	 * @param next listener to receive the normalized frames
+	 */
+	public static CepstralNormalizationStage createExponential(int dimension, double decay, boolean normalizeVariance,
+			FeatureFrameListener next) {
+		if (!(decay > 0 && decay < 1)) {
+			throw new IllegalArgumentException("Decay must be between 0 and 1: " + decay);
+		}
+		return new CepstralNormalizationStage(Mode.EXPONENTIAL, dimension, normalizeVariance, 0, decay, next);
+	}
+	
+	/**
+	 * Normalizes every frame of the matrix in place by the statistics of the whole matrix.
+	 *
+	 * @param features of an utterance
+	 * @param normalizeVariance whether to scale the components to unit variance as well
+	 */
+	public static void normalizeUtterance(FeatureMatrix features, boolean normalizeVariance) {
+		final int dimension = features.getDimension();
+		final int numFrames = features.getNumFrames();
+		final double[] data = features.getData();
+		if (numFrames == 0) {
+			return;
+		}
+		double[] means = new double[dimension];
+		double[] scales = new double[dimension];
+		for (int t = 0; t < numFrames; t++) {
+			int offset = features.getOffset(t);
+			for (int c = 0; c < dimension; c++) { means[c] += data[offset + c]; }
+		}
+		for (int c = 0; c < dimension; c++) { means[c] /= numFrames; }
+		Arrays.fill(scales, 1);
+		if (normalizeVariance) {
+			// a second pass about the mean, which is more accurate than the running sums
+			double[] variances = new double[dimension];
+			for (int t = 0; t < numFrames; t++) {
+				int offset = features.getOffset(t);
+				for (int c = 0; c < dimension; c++) {
+					double deviation = data[offset + c] - means[c];
+					variances[c] += deviation*deviation;
+				}
+			}
+			for (int c = 0; c < dimension; c++) {
+				scales[c] = 1/Math.sqrt(Math.max(variances[c]/numFrames, VARIANCE_FLOOR));
+			}
+		}
+		for (int t = 0; t < numFrames; t++) {
+			int offset = features.getOffset(t);
+			for (int c = 0; c < dimension; c++) {
+				data[offset + c] = (data[offset + c] - means[c])*scales[c];
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onFeatureFrame(double[] data, int offset) {
+		switch (mode) {
+		case UTTERANCE:
+			if ((numFrames + 1)*dimension > frames.length) {
+				frames = Arrays.copyOf(frames, 2*frames.length);
+			}
+			System.arraycopy(data, offset, frames, (int) numFrames*dimension, dimension);
+			numFrames++;
+			break;
+		case SLIDING_WINDOW:
+			int slot = (int) (numFrames % window)*dimension;
+			for (int c = 0; c < dimension; c++) {
+				double value = data[offset + c];
+				if (numFrames >= window) {
+					// the frame leaving the window
+					double oldValue = frames[slot + c];
+					sums[c] -= oldValue;
+					sumSquares[c] -= oldValue*oldValue;
+				}
+				sums[c] += value;
+				sumSquares[c] += value*value;
+				frames[slot + c] = value;
+			}
+			numFrames++;
+			emitFrame(data, offset, Math.min(numFrames, window));
+			break;
+		case EXPONENTIAL:
+			weight = decay*weight + 1;
+			for (int c = 0; c < dimension; c++) {
+				double value = data[offset + c];
+				sums[c] = decay*sums[c] + value;
+				sumSquares[c] = decay*sumSquares[c] + value*value;
+			}
+			numFrames++;
+			emitFrame(data, offset, weight);
+			break;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onEnd() {
+		if (mode == Mode.UTTERANCE && numFrames > 0) {
+			FeatureMatrix utterance = new FeatureMatrix(frames, (int) numFrames, dimension);
+			normalizeUtterance(utterance, normalizeVariance);
+			for (int t = 0; t < numFrames; t++) {
+				next.onFeatureFrame(frames, utterance.getOffset(t));
+			}
+		}
+		reset();
+		next.onEnd();
+	}
+	
+	/**
+	 * Passes on the frame normalized by the current sums, which hold the given total weight.
+	 */
+	private void emitFrame(double[] data, int offset, double totalWeight) {
+		for (int c = 0; c < dimension; c++) {
+			double mean = sums[c]/totalWeight;
+			double normalized = data[offset + c] - mean;
+			if (normalizeVariance) {
+				double variance = sumSquares[c]/totalWeight - mean*mean;
+				normalized /= Math.sqrt(Math.max(variance, VARIANCE_FLOOR));
+			}
+			outputFrame[c] = normalized;
+		}
+		next.onFeatureFrame(outputFrame, 0);
+	}
+	
+	private void reset() {
+		Arrays.fill(sums, 0);
+		Arrays.fill(sumSquares, 0);
+		weight = 0;
+		numFrames = 0;
+	}
+	
+}
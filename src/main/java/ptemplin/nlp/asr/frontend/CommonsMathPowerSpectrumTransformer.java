@@ -0,0 +1,61 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Computes the power spectrum with the general complex FFT of commons-math, in place in a
+ * scratch buffer. The result is bit-identical to squaring {@link Complex#abs()} of every bin
+ * returned by {@link FastFourierTransformer#transform(double[], TransformType)}.
+ */
+public class CommonsMathPowerSpectrumTransformer implements PowerSpectrumTransformer {
+
+	private double[][] dataRI = new double[2][0];
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void computePowerSpectrum(double[] frame, double[] powerSpectrum) {
+		if (dataRI[0].length != frame.length) {
+			dataRI = new double[2][frame.length];
+		}
+		System.arraycopy(frame, 0, dataRI[0], 0, frame.length);
+		Arrays.fill(dataRI[1], 0);
+		FastFourierTransformer.transformInPlace(dataRI, DftNormalization.STANDARD, TransformType.FORWARD);
+		for (int i = 0; i < frame.length; i++) {
+			powerSpectrum[i] = Math.pow(abs(dataRI[0][i], dataRI[1][i]), 2);
+		}
+	}
+	
+	/**
+	 * The modulus of a complex number, computed exactly as {@link Complex#abs()} does.
+	 */
+	private static double abs(double real, double imaginary) {
+		if (Double.isNaN(real) || Double.isNaN(imaginary)) {
+			return Double.NaN;
+		}
+		if (Double.isInfinite(real) || Double.isInfinite(imaginary)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (FastMath.abs(real) < FastMath.abs(imaginary)) {
+			if (imaginary == 0.0) {
+				return FastMath.abs(real);
+			}
+			double q = real / imaginary;
+			return FastMath.abs(imaginary) * FastMath.sqrt(1 + q * q);
+		} else {
+			if (real == 0.0) {
+				return FastMath.abs(imaginary);
+			}
+			double q = imaginary / real;
+			return FastMath.abs(real) * FastMath.sqrt(1 + q * q);
+		}
+	}
+	
+}
@@ -0,0 +1,150 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Appends first and second order regression deltas to every frame, so each output frame holds
+ * the static features followed by their deltas and delta-deltas. For a window of N frames,
+ *
+ *     d[t] = sum_{n=1..N} n*(c[t+n] - c[t-n]) / (2*sum_{n=1..N} n^2)
+ *
+ * and the delta-deltas are the same regression over the deltas, with frames beyond either end
+ * of the stream replaced by the first or last frame. Only the last 2N+1 static frames and
+ * deltas are kept, in ring buffers, and every output frame is delayed by exactly 2N frames.
+ */
+public class DeltaFeatureStage implements FeatureFrameListener {
+	
+	public static final int DEFAULT_WINDOW = 2;
+	
+	private final int dimension;
+	private final int window;
+	private final double normalizer;
+	private final FeatureFrameListener next;
+	
+	// frame k is held in slot k mod ringSize
+	private final int ringSize;
+	private final double[] staticRing;
+	private final double[] deltaRing;
+	private final double[] outputFrame;
+	private long numFrames;
+	
+	public DeltaFeatureStage(int dimension, FeatureFrameListener next) {
+		this(dimension, DEFAULT_WINDOW, next);
+	}
+	
+	/**
+	 * @param dimension of the static input frames
+	 * @param window the number of frames either side used in the regression
+	 * @param next listener to receive frames of three times the input dimension
+	 */
+	public DeltaFeatureStage(int dimension, int window, FeatureFrameListener next) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Delta window must be at least 1: " + window);
+		}
+		this.dimension = dimension;
+		this.window = window;
+		this.normalizer = window*(window + 1)*(2*window + 1)/3.0;
+		this.next = next;
+		this.ringSize = 2*window + 1;
+		this.staticRing = new double[ringSize*dimension];
+		this.deltaRing = new double[ringSize*dimension];
+		this.outputFrame = new double[3*dimension];
+		this.numFrames = 0;
+	}
+	
+	/**
+	 * Computes the deltas and delta-deltas of every frame of the matrix.
+	 *
+	 * @param features static features
+	 * @param window the number of frames either side used in the regression
+	 * @return the static features, deltas and delta-deltas of each frame
+	 */
+	public static FeatureMatrix computeDeltas(FeatureMatrix features, int window) {
+		FeatureMatrixCollector collector = new FeatureMatrixCollector(3*features.getDimension());
+		DeltaFeatureStage stage = new DeltaFeatureStage(features.getDimension(), window, collector);
+		for (int t = 0; t < features.getNumFrames(); t++) {
+			stage.onFeatureFrame(features.getData(), features.getOffset(t));
+		}
+		stage.onEnd();
+		return collector.getFeatureMatrix();
+	}
+	
+	/**
+	 * @return the dimension of the frames passed on to the next listener
+	 */
+	public int getOutputDimension() {
+		return 3*dimension;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onFeatureFrame(double[] data, int offset) {
+		System.arraycopy(data, offset, staticRing, slot(numFrames), dimension);
+		numFrames++;
+		long lastFrame = numFrames - 1;
+		// the newest frame completes the delta window N frames back
+		if (lastFrame - window >= 0) {
+			computeDelta(lastFrame - window, lastFrame);
+		}
+		// which in turn completes the delta-delta window 2N frames back
+		if (lastFrame - 2*window >= 0) {
+			emitFrame(lastFrame - 2*window, lastFrame - window);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onEnd() {
+		// complete the remaining windows as if the last frame were repeated, in the same order
+		// as during the stream so the ring buffers still hold every frame needed
+		long lastFrame = numFrames - 1;
+		for (long newestFrame = numFrames; newestFrame < numFrames + 2*window; newestFrame++) {
+			long deltaFrame = newestFrame - window;
+			if (deltaFrame >= 0 && deltaFrame <= lastFrame) {
+				computeDelta(deltaFrame, lastFrame);
+			}
+			long outputFrame = newestFrame - 2*window;
+			if (outputFrame >= 0 && outputFrame <= lastFrame) {
+				emitFrame(outputFrame, lastFrame);
+			}
+		}
+		numFrames = 0;
+		next.onEnd();
+	}
+	
+	private void computeDelta(long t, long lastFrame) {
+		int deltaOffset = slot(t);
+		for (int c = 0; c < dimension; c++) {
+			double sum = 0;
+			for (int n = 1; n <= window; n++) {
+				sum += n*(staticRing[slot(clamp(t + n, lastFrame)) + c] - staticRing[slot(clamp(t - n, lastFrame)) + c]);
+			}
+			deltaRing[deltaOffset + c] = sum / normalizer;
+		}
+	}
+	
+	private void emitFrame(long t, long lastDelta) {
+		int staticOffset = slot(t);
+		for (int c = 0; c < dimension; c++) {
+			double sum = 0;
+			for (int n = 1; n <= window; n++) {
+				sum += n*(deltaRing[slot(clamp(t + n, lastDelta)) + c] - deltaRing[slot(clamp(t - n, lastDelta)) + c]);
+			}
+			outputFrame[c] = staticRing[staticOffset + c];
+			outputFrame[dimension + c] = deltaRing[staticOffset + c];
+			outputFrame[2*dimension + c] = sum / normalizer;
+		}
+		next.onFeatureFrame(outputFrame, 0);
+	}
+	
+	private static long clamp(long frame, long lastFrame) {
+		return Math.max(0, Math.min(frame, lastFrame));
+	}
+	
+	private int slot(long frame) {
+		return (int) (frame % ringSize)*dimension;
+	}
+	
+}
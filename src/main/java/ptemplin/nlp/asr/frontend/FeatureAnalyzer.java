@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.transform.*;
 
 import ptemplin.nlp.asr.frontend.lincoln.MelFrequencyFilterBank;
@@ -26,13 +25,44 @@ public class FeatureAnalyzer {
 	private static final double[] HAMMING_WINDOW = generateHammingWindow(FRAME_LENGTH);
 	
 	private final MelFrequencyFilterBank melFilter;
-	private final FastFourierTransformer fftExecutor;
+	private final PowerSpectrumTransformer powerSpectrumTransformer;
 	private final FastCosineTransformer fctExecutor;
+	// computes only the kept cepstra with the weighting applied, or null to use the full DCT-I
+	private final TruncatedCosineTransform truncatedDct;
+	private final FrontendKernels kernels;
 	
 	public FeatureAnalyzer() {
+		this(new CommonsMathPowerSpectrumTransformer());
+	}
+	
+	public FeatureAnalyzer(PowerSpectrumTransformer powerSpectrumTransformer) {
 		this.melFilter = new MelFrequencyFilterBank();
-		this.fftExecutor = new FastFourierTransformer(DftNormalization.STANDARD);
+		this.powerSpectrumTransformer = powerSpectrumTransformer;
 		this.fctExecutor = new FastCosineTransformer(DctNormalization.STANDARD_DCT_I);
+		this.truncatedDct = null;
+		this.kernels = null;
+	}
+	
+	/**
+	 * Creates an analyzer computing only the kept cepstra, already weighted, as a product with
+	 * a precomputed DCT basis, from a filterbank of any size.
+	 *
+	 * @param powerSpectrumTransformer to compute the power spectrum of each frame
+	 * @param numFilters in the mel filterbank, at least {@link #NUM_MFCC_COMPONENTS}
+	 */
+	public FeatureAnalyzer(PowerSpectrumTransformer powerSpectrumTransformer, int numFilters) {
+		if (numFilters < NUM_MFCC_COMPONENTS) {
+			throw new IllegalArgumentException("Filterbank of size " + numFilters
+					+ " cannot give " + NUM_MFCC_COMPONENTS + " cepstra");
+		}
+		this.melFilter = new MelFrequencyFilterBank(numFilters);
+		this.powerSpectrumTransformer = powerSpectrumTransformer;
+		this.fctExecutor = null;
+		// the first cepstrum is discarded, and only the next NUM_MFCC_COMPONENTS-1 are kept
+		double[] weights = new double[NUM_MFCC_COMPONENTS - 1];
+		for (int i = 0; i < weights.length; i++) { weights[i] = getCepstralWeight(i + 1); }
+		this.truncatedDct = new TruncatedCosineTransform(numFilters, 1, weights.length, weights);
+		this.kernels = new ScalarFrontendKernels();
 	}
 	
 	public List<int[]> computeObservationVectors(int[] sample) {
@@ -51,12 +81,33 @@ public class FeatureAnalyzer {
 		return frameMFCCs;
 	}
 	
+	public FeatureMatrix computeObservationMatrix(int[] sample) {
+		final int frameShift = FRAME_LENGTH/2;
+		final int numFrames = (sample.length + frameShift - 1)/frameShift;
+		FeatureMatrix observations = new FeatureMatrix(numFrames, NUM_MFCC_COMPONENTS);
+		double[] data = observations.getData();
+		for (int t = 0; t < numFrames; t++) {
+			int startIndex = t*frameShift;
+			int[] frame = Arrays.copyOfRange(sample, startIndex, Math.min(startIndex + FRAME_LENGTH, sample.length));
+			double[] rawMFCC = computeFrameMFCC(frame);
+			// discard first component and truncate
+			int offset = observations.getOffset(t);
+			for (int i = 1; i < NUM_MFCC_COMPONENTS; i++) { data[offset + i-1] = (int) rawMFCC[i]; }
+		}
+		return observations;
+	}
+	
 	private double[] computeFrameMFCC(int[] frame) {
 		double[] preprocessedFrame = preprocess(frame);
 		double[] powerSpectrum = getPowerSpectrum(preprocessedFrame);
 		preemphasize(powerSpectrum);
 		double[] melFreqSpectrum = melFilter.filter(powerSpectrum, FRAMES_PER_SECOND);
 		convertToLogPowerSpectrum(melFreqSpectrum);
+		if (truncatedDct != null) {
+			double[] cepstrum = new double[NUM_MFCC_COMPONENTS];
+			truncatedDct.transform(melFreqSpectrum, cepstrum, kernels);
+			return cepstrum;
+		}
 		double[] cepstrum = getDiscreteCosineTransform(melFreqSpectrum);
 		applyCepstralWeighting(cepstrum);
 		return cepstrum;
@@ -82,11 +133,8 @@ public class FeatureAnalyzer {
 	}
 	
 	private double[] getPowerSpectrum(double[] data) {
-		Complex[] complexSpectrum = fftExecutor.transform(data, TransformType.FORWARD);
-		double[] powerSpectrum = new double[complexSpectrum.length];
-		for (int i = 0; i < complexSpectrum.length; i++) {
-			powerSpectrum[i] = Math.pow(complexSpectrum[i].abs(), 2);
-		}
+		double[] powerSpectrum = new double[data.length];
+		powerSpectrumTransformer.computePowerSpectrum(data, powerSpectrum);
 		return powerSpectrum;
 	}
 	
@@ -107,11 +155,15 @@ public class FeatureAnalyzer {
 	}
 	
 	private void applyCepstralWeighting(double[] cepstrum) {
-		for (int i = 1; i <= cepstrum.length; i++) {
-			cepstrum[i-1] *= 1 + (NUM_MFCC_COMPONENTS/2)*Math.sin((Math.PI*i)/NUM_MFCC_COMPONENTS);
+		for (int i = 0; i < cepstrum.length; i++) {
+			cepstrum[i] *= getCepstralWeight(i);
 		}
 	}
 	
+	private static double getCepstralWeight(int index) {
+		return 1 + (NUM_MFCC_COMPONENTS/2)*Math.sin((Math.PI*(index + 1))/NUM_MFCC_COMPONENTS);
+	}
+	
 	public static void main(String[] args) throws Exception {
 		FeatureAnalyzer analyzer = new FeatureAnalyzer();
 		List<int[]> observations = analyzer.computeObservationVectorsForPhone("R");
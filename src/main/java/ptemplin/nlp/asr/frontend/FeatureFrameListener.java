@@ -0,0 +1,24 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Receives frames of features one at a time, such as a stage of a feature pipeline or the sink
+ * at its end. Stages pass their output frames on to the next listener, possibly after a fixed
+ * delay, so the same stages serve both batch and streaming processing.
+ */
+public interface FeatureFrameListener {
+
+    /**
+     * Called with each frame in order. The frame's components start at the offset of the data,
+     * which may be a buffer reused by the caller, so it must be copied if it is retained.
+     *
+     * @param data holding the frame
+     * @param offset of the first component of the frame
+     */
+    void onFeatureFrame(double[] data, int offset);
+
+    /**
+     * Called once after the last frame, so that any delayed frames can be flushed.
+     */
+    void onEnd();
+
+}
@@ -0,0 +1,98 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sequence of feature vectors stored time-major in a single contiguous array, so that the
+ * components of frame t are data[t*dimension] to data[t*dimension + dimension - 1].
+ */
+public final class FeatureMatrix {
+
+	private final double[] data;
+	private final int numFrames;
+	private final int dimension;
+	
+	public FeatureMatrix(int numFrames, int dimension) {
+		this(new double[numFrames*dimension], numFrames, dimension);
+	}
+	
+	/**
+	 * Wraps the given time-major data without copying it.
+	 */
+	public FeatureMatrix(double[] data, int numFrames, int dimension) {
+		if (data.length < numFrames*dimension) {
+			throw new IllegalArgumentException("Data of length " + data.length
+					+ " cannot hold " + numFrames + " frames of dimension " + dimension);
+		}
+		this.data = data;
+		this.numFrames = numFrames;
+		this.dimension = dimension;
+	}
+	
+	/**
+	 * Copies a list of feature vectors, all of the same dimension, into a matrix.
+	 */
+	public static FeatureMatrix fromVectors(List<int[]> vectors) {
+		int dimension = vectors.isEmpty() ? 0 : vectors.get(0).length;
+		FeatureMatrix matrix = new FeatureMatrix(vectors.size(), dimension);
+		for (int t = 0; t < vectors.size(); t++) {
+			int[] vector = vectors.get(t);
+			int offset = t*dimension;
+			for (int c = 0; c < dimension; c++) {
+				matrix.data[offset + c] = vector[c];
+			}
+		}
+		return matrix;
+	}
+	
+	/**
+	 * Copies an array of feature vectors, all of the same dimension, into a matrix.
+	 */
+	public static FeatureMatrix fromRows(double[][] rows) {
+		int dimension = rows.length == 0 ? 0 : rows[0].length;
+		FeatureMatrix matrix = new FeatureMatrix(rows.length, dimension);
+		for (int t = 0; t < rows.length; t++) {
+			System.arraycopy(rows[t], 0, matrix.data, t*dimension, dimension);
+		}
+		return matrix;
+	}
+	
+	public int getNumFrames() {
+		return numFrames;
+	}
+	
+	public int getDimension() {
+		return dimension;
+	}
+	
+	/**
+	 * @return the backing array, which is shared rather than copied
+	 */
+	public double[] getData() {
+		return data;
+	}
+	
+	/**
+	 * @return the index in the backing array of the first component of the frame
+	 */
+	public int getOffset(int frame) {
+		return frame*dimension;
+	}
+	
+	public double get(int frame, int component) {
+		return data[frame*dimension + component];
+	}
+	
+	public void set(int frame, int component, double value) {
+		data[frame*dimension + component] = value;
+	}
+	
+	/**
+	 * @return a copy of the components of the frame
+	 */
+	public double[] getFrame(int frame) {
+		return Arrays.copyOfRange(data, frame*dimension, (frame + 1)*dimension);
+	}
+	
+}
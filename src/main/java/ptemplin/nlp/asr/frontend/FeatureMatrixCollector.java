@@ -0,0 +1,47 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+
+/**
+ * Collects the frames it receives into a {@link FeatureMatrix}.
+ */
+public class FeatureMatrixCollector implements FeatureFrameListener {
+
+	private final int dimension;
+	private double[] data;
+	private int numFrames;
+	
+	public FeatureMatrixCollector(int dimension) {
+		this.dimension = dimension;
+		this.data = new double[dimension*16];
+		this.numFrames = 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onFeatureFrame(double[] frame, int offset) {
+		if ((numFrames + 1)*dimension > data.length) {
+			data = Arrays.copyOf(data, 2*data.length);
+		}
+		System.arraycopy(frame, offset, data, numFrames*dimension, dimension);
+		numFrames++;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onEnd() {
+		// nothing to flush
+	}
+	
+	/**
+	 * @return the frames collected so far
+	 */
+	public FeatureMatrix getFeatureMatrix() {
+		return new FeatureMatrix(Arrays.copyOf(data, numFrames*dimension), numFrames, dimension);
+	}
+	
+}
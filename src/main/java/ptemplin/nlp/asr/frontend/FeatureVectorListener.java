@@ -0,0 +1,15 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Receives feature vectors from a streaming analyzer as soon as they are computed.
+ */
+public interface FeatureVectorListener {
+
+    /**
+     * Called with each feature vector in the order of the frames of the stream.
+     *
+     * @param featureVector the feature vector of the next frame
+     */
+    void onFeatureVector(int[] featureVector);
+
+}
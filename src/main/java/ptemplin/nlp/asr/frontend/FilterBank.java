@@ -4,6 +4,12 @@ public interface FilterBank {
 	
 	public double[] filter(double[] signal, double frequencyMultiplier);
 	
+	/**
+	 * Filters the signal into the given coefficient buffer, which must hold at least
+	 * {@link #getSize()} values. Any previous contents of the buffer are overwritten.
+	 */
+	public void filter(double[] signal, double frequencyMultiplier, double[] coefficients);
+	
 	public int getSize();
 	
 	public int getLow();
@@ -0,0 +1,30 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * The data-parallel arithmetic at the core of frame analysis, so that it can be backed by
+ * either plain loops or explicit SIMD instructions.
+ */
+public interface FrontendKernels {
+
+    /**
+     * Multiplies length samples from the start index by the window, writing the result to out
+     * from the offset onwards.
+     */
+    void window(int[] samples, int startIndex, double[] window, double[] out, int outOffset, int length);
+
+    /**
+     * Multiplies every element of data by the corresponding weight, in place.
+     */
+    void multiply(double[] data, double[] weights, int length);
+
+    /**
+     * Computes real[i]^2 + imaginary[i]^2 for every i into power.
+     */
+    void squaredMagnitude(double[] real, double[] imaginary, double[] power, int length);
+
+    /**
+     * @return the dot product of length elements of a and b from their offsets onwards
+     */
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+}
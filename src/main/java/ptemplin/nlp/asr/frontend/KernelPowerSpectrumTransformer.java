@@ -0,0 +1,36 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+/**
+ * Computes the power spectrum with the in-place complex FFT of commons-math, taking the power
+ * of every bin as re^2 + im^2 with the given kernels rather than squaring a modulus.
+ */
+public class KernelPowerSpectrumTransformer implements PowerSpectrumTransformer {
+
+	private final FrontendKernels kernels;
+	private double[][] dataRI = new double[2][0];
+	
+	public KernelPowerSpectrumTransformer(FrontendKernels kernels) {
+		this.kernels = kernels;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void computePowerSpectrum(double[] frame, double[] powerSpectrum) {
+		if (dataRI[0].length != frame.length) {
+			dataRI = new double[2][frame.length];
+		}
+		System.arraycopy(frame, 0, dataRI[0], 0, frame.length);
+		Arrays.fill(dataRI[1], 0);
+		FastFourierTransformer.transformInPlace(dataRI, DftNormalization.STANDARD, TransformType.FORWARD);
+		kernels.squaredMagnitude(dataRI[0], dataRI[1], powerSpectrum, frame.length);
+	}
+	
+}
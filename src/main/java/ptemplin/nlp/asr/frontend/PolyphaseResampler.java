@@ -0,0 +1,258 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+
+/**
+ * Converts audio between sample rates in the rational ratio L/M of the output to input rate,
+ * as if upsampling by L, low-pass filtering and downsampling by M. The low-pass filter is a
+ * Kaiser-windowed sinc cut off below the lower of the two Nyquist frequencies, so that
+ * frequencies the output cannot represent are removed rather than aliased. Only the outputs
+ * which are kept are computed: output n lies at input time n*M/L, and is the dot product of
+ * the input around it with the one of the L phases of the filter for its fractional position,
+ * all of which are precomputed.
+ *
+ * The resampler can be fed a stream in chunks of any size, producing each output once all the
+ * input it depends on has arrived, or resample a whole block at once with identical results.
+ * Input before the start and after the end of the stream is taken to be silence. Instances
+ * hold the state of one stream and are not thread-safe.
+ */
+public class PolyphaseResampler {
+	
+	// the half-length of the filter in zero crossings of the sinc
+	private static final int ZERO_CROSSINGS = 8;
+	// the fraction of the output Nyquist frequency passed, leaving the rest as transition band
+	private static final double ROLLOFF = 0.9;
+	private static final double KAISER_BETA = 8;
+	
+	private final int inputRate;
+	private final int outputRate;
+	private final int upFactor;
+	private final int downFactor;
+	// taps of every phase either side of the output time
+	private final int halfTaps;
+	private final int numTaps;
+	// the taps of phase p are phases[p*numTaps] to phases[(p+1)*numTaps - 1]
+	private final double[] phases;
+	
+	// the input not yet used by every output, of which buffer[0] is at absolute index bufferStart
+	private double[] buffer;
+	private long bufferStart;
+	private int bufferLength;
+	private long numInputs;
+	private long numOutputs;
+	
+	/**
+	 * @param inputRate the sample rate of the input, in Hz
+	 * @param outputRate the sample rate of the output, in Hz
+	 */
+	public PolyphaseResampler(int inputRate, int outputRate) {
+		if (inputRate <= 0 || outputRate <= 0) {
+			throw new IllegalArgumentException("Sample rates must be positive: " + inputRate + ", " + outputRate);
+		}
+		this.inputRate = inputRate;
+		this.outputRate = outputRate;
+		int divisor = gcd(inputRate, outputRate);
+		this.upFactor = outputRate/divisor;
+		this.downFactor = inputRate/divisor;
+		// the cutoff in cycles per input sample, below both Nyquist frequencies
+		double cutoff = 0.5*Math.min(1, upFactor/(double) downFactor)*ROLLOFF;
+		this.halfTaps = (int) Math.ceil(ZERO_CROSSINGS/(2*cutoff));
+		this.numTaps = 2*halfTaps;
+		this.phases = generatePhases(cutoff);
+		this.buffer = new double[Math.max(2*numTaps, 1024)];
+		reset();
+	}
+	
+	/**
+	 * The tap j of phase p weights the input halfTaps - 1 - j + p/L input samples before the
+	 * output. Each phase is normalized to a gain of exactly one at DC.
+	 */
+	private double[] generatePhases(double cutoff) {
+		double[] phases = new double[upFactor*numTaps];
+		double windowNormalizer = besselI0(KAISER_BETA);
+		for (int p = 0; p < upFactor; p++) {
+			double sum = 0;
+			for (int j = 0; j < numTaps; j++) {
+				double t = (double) p/upFactor + halfTaps - 1 - j;
+				double x = t/halfTaps;
+				double window = Math.abs(x) < 1 ? besselI0(KAISER_BETA*Math.sqrt(1 - x*x))/windowNormalizer : 0;
+				double tap = 2*cutoff*sinc(2*cutoff*t)*window;
+				phases[p*numTaps + j] = tap;
+				sum += tap;
+			}
+			for (int j = 0; j < numTaps; j++) {
+				phases[p*numTaps + j] /= sum;
+			}
+		}
+		return phases;
+	}
+	
+	/**
+	 * @return a description of the filter design, which with the two rates determines every
+	 *         tap, for keying anything resampled with it
+	 */
+	public static String getConfiguration() {
+		return "PolyphaseResampler zeroCrossings=" + ZERO_CROSSINGS + " rolloff=" + ROLLOFF
+				+ " kaiserBeta=" + KAISER_BETA + " rounding=nearest";
+	}
+	
+	/**
+	 * Resamples a whole block of input.
+	 *
+	 * @param input samples at the input rate
+	 * @return the ceil(input.length*L/M) samples at the output rate covering the same time
+	 */
+	public static int[] resample(int[] input, int inputRate, int outputRate) {
+		PolyphaseResampler resampler = new PolyphaseResampler(inputRate, outputRate);
+		int[] output = new int[resampler.getMaxOutputLength(input.length)];
+		int numOutputs = resampler.process(input, 0, input.length, output, 0);
+		numOutputs += resampler.end(output, numOutputs);
+		return Arrays.copyOf(output, numOutputs);
+	}
+	
+	/**
+	 * Feeds the next chunk of the stream, writing any outputs which are now complete.
+	 *
+	 * @param input holding the chunk
+	 * @param offset of the chunk in the input
+	 * @param length of the chunk
+	 * @param output to write the outputs to, with room for {@link #getMaxOutputLength(int)}
+	 * @param outputOffset of the first output written
+	 * @return the number of outputs written
+	 */
+	public int process(int[] input, int offset, int length, int[] output, int outputOffset) {
+		ensureCapacity(bufferLength + length);
+		for (int i = 0; i < length; i++) {
+			buffer[bufferLength + i] = input[offset + i];
+		}
+		bufferLength += length;
+		numInputs += length;
+		return emitOutputs(output, outputOffset, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Ends the stream, writing the remaining outputs up to the time of the last input, and
+	 * resets the resampler for a new stream.
+	 *
+	 * @param output to write the outputs to, with room for {@link #getMaxOutputLength(int)} of 0
+	 * @param outputOffset of the first output written
+	 * @return the number of outputs written
+	 */
+	public int end(int[] output, int outputOffset) {
+		// the silence after the stream completes the filters of the last outputs
+		ensureCapacity(bufferLength + halfTaps + 1);
+		Arrays.fill(buffer, bufferLength, bufferLength + halfTaps + 1, 0);
+		bufferLength += halfTaps + 1;
+		// the outputs at times before the end of the input
+		long lastOutput = (numInputs*upFactor + downFactor - 1)/downFactor;
+		int numWritten = emitOutputs(output, outputOffset, lastOutput);
+		reset();
+		return numWritten;
+	}
+	
+	/**
+	 * @return an upper bound on the outputs written by processing a chunk of the given length
+	 */
+	public int getMaxOutputLength(int inputLength) {
+		return (int) (((long) inputLength + halfTaps + 1)*upFactor/downFactor) + 1;
+	}
+	
+	/**
+	 * @return the number of input samples by which the streamed outputs lag the input
+	 */
+	public int getDelay() {
+		return halfTaps;
+	}
+	
+	public int getInputRate() {
+		return inputRate;
+	}
+	
+	public int getOutputRate() {
+		return outputRate;
+	}
+	
+	private int emitOutputs(int[] output, int outputOffset, long lastOutput) {
+		int numWritten = 0;
+		while (numOutputs < lastOutput) {
+			long position = numOutputs*downFactor;
+			long inputIndex = position/upFactor;
+			int phase = (int) (position % upFactor);
+			// the filter spans inputs inputIndex - halfTaps + 1 to inputIndex + halfTaps
+			int first = (int) (inputIndex - halfTaps + 1 - bufferStart);
+			if (first + numTaps > bufferLength) {
+				break;
+			}
+			double sum = 0;
+			final int phaseOffset = phase*numTaps;
+			for (int j = 0; j < numTaps; j++) {
+				sum += buffer[first + j]*phases[phaseOffset + j];
+			}
+			output[outputOffset + numWritten++] = (int) Math.round(sum);
+			numOutputs++;
+		}
+		discardUsedInput();
+		return numWritten;
+	}
+	
+	/**
+	 * Drops the buffered input before the first tap of the next output.
+	 */
+	private void discardUsedInput() {
+		long nextInputIndex = numOutputs*downFactor/upFactor;
+		int used = (int) Math.min(bufferLength, Math.max(0, nextInputIndex - halfTaps + 1 - bufferStart));
+		if (used > 0) {
+			System.arraycopy(buffer, used, buffer, 0, bufferLength - used);
+			bufferLength -= used;
+			bufferStart += used;
+		}
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if (capacity > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(2*buffer.length, capacity));
+		}
+	}
+	
+	private void reset() {
+		// the silence before the stream, for the filters of the first outputs
+		bufferStart = -(halfTaps - 1);
+		bufferLength = halfTaps - 1;
+		Arrays.fill(buffer, 0, bufferLength, 0);
+		numInputs = 0;
+		numOutputs = 0;
+	}
+	
+	private static double sinc(double x) {
+		if (x == 0) {
+			return 1;
+		}
+		return Math.sin(Math.PI*x)/(Math.PI*x);
+	}
+	
+	/**
+	 * The zeroth order modified Bessel function of the first kind, by its power series.
+	 */
+	private static double besselI0(double x) {
+		double sum = 1;
+		double term = 1;
+		for (int k = 1; k < 50; k++) {
+			term *= (x/(2*k))*(x/(2*k));
+			sum += term;
+			if (term < sum*1e-17) {
+				break;
+			}
+		}
+		return sum;
+	}
+	
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+	
+}
@@ -0,0 +1,18 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Computes the power spectrum of a real-valued frame of audio. Implementations may keep
+ * scratch buffers and so are not expected to be thread-safe.
+ */
+public interface PowerSpectrumTransformer {
+
+    /**
+     * Computes the squared magnitude of every bin of the discrete Fourier transform of the
+     * frame, including the mirrored upper half.
+     *
+     * @param frame of real-valued data, whose length must be a power of two
+     * @param powerSpectrum to write the frame.length bins of the power spectrum to
+     */
+    void computePowerSpectrum(double[] frame, double[] powerSpectrum);
+
+}
@@ -0,0 +1,117 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Computes the power spectrum of real-valued frames of a fixed power-of-two length. The frame
+ * is packed into a complex sequence of half its length, transformed with a radix-2 FFT using
+ * precomputed bit-reversal and twiddle tables, and then split into the spectrum of the real
+ * frame. Power is taken directly as re^2 + im^2, without the square root of a modulus.
+ */
+public class RealFftPowerSpectrumTransformer implements PowerSpectrumTransformer {
+
+	private final int size;
+	private final int halfSize;
+	
+	private final int[] bitReversal;
+	// e^(-2*pi*i*k/halfSize) for the butterflies of the half-length transform
+	private final double[] butterflyCos;
+	private final double[] butterflySin;
+	// e^(-2*pi*i*k/size) for splitting the half-length transform into the full spectrum
+	private final double[] splitCos;
+	private final double[] splitSin;
+	
+	private final double[] real;
+	private final double[] imaginary;
+	
+	/**
+	 * @param size of the frames to transform, a power of two of at least 4
+	 */
+	public RealFftPowerSpectrumTransformer(int size) {
+		if (size < 4 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("Frame size must be a power of two of at least 4: " + size);
+		}
+		this.size = size;
+		this.halfSize = size/2;
+		this.bitReversal = new int[halfSize];
+		int bits = Integer.numberOfTrailingZeros(halfSize);
+		for (int i = 0; i < halfSize; i++) {
+			bitReversal[i] = Integer.reverse(i) >>> (Integer.SIZE - bits);
+		}
+		this.butterflyCos = new double[halfSize/2];
+		this.butterflySin = new double[halfSize/2];
+		for (int k = 0; k < halfSize/2; k++) {
+			butterflyCos[k] = Math.cos(2*Math.PI*k/halfSize);
+			butterflySin[k] = Math.sin(2*Math.PI*k/halfSize);
+		}
+		this.splitCos = new double[halfSize];
+		this.splitSin = new double[halfSize];
+		for (int k = 0; k < halfSize; k++) {
+			splitCos[k] = Math.cos(2*Math.PI*k/size);
+			splitSin[k] = Math.sin(2*Math.PI*k/size);
+		}
+		this.real = new double[halfSize];
+		this.imaginary = new double[halfSize];
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void computePowerSpectrum(double[] frame, double[] powerSpectrum) {
+		if (frame.length != size) {
+			throw new IllegalArgumentException("Expected a frame of length " + size + " but was " + frame.length);
+		}
+		// pack even samples as the real part and odd samples as the imaginary part
+		for (int i = 0; i < halfSize; i++) {
+			real[bitReversal[i]] = frame[2*i];
+			imaginary[bitReversal[i]] = frame[2*i + 1];
+		}
+		transformHalf();
+		// split into the spectrum of the real frame, X[k] = E[k] + e^(-2*pi*i*k/size)*O[k]
+		final double dc = real[0] + imaginary[0];
+		final double nyquist = real[0] - imaginary[0];
+		powerSpectrum[0] = dc*dc;
+		powerSpectrum[halfSize] = nyquist*nyquist;
+		for (int k = 1; k < halfSize; k++) {
+			final double zr = real[k];
+			final double zi = imaginary[k];
+			final double cr = real[halfSize - k];
+			final double ci = -imaginary[halfSize - k];
+			final double evenReal = 0.5*(zr + cr);
+			final double evenImaginary = 0.5*(zi + ci);
+			final double diffReal = 0.5*(zr - cr);
+			final double diffImaginary = 0.5*(zi - ci);
+			final double c = splitCos[k];
+			final double s = splitSin[k];
+			final double xr = evenReal + c*diffImaginary - s*diffReal;
+			final double xi = evenImaginary - c*diffReal - s*diffImaginary;
+			final double power = xr*xr + xi*xi;
+			powerSpectrum[k] = power;
+			powerSpectrum[size - k] = power;
+		}
+	}
+	
+	/**
+	 * Forward radix-2 decimation-in-time FFT of the bit-reversed half-length sequence.
+	 */
+	private void transformHalf() {
+		for (int length = 2; length <= halfSize; length <<= 1) {
+			final int halfLength = length >> 1;
+			final int twiddleStep = halfSize / length;
+			for (int start = 0; start < halfSize; start += length) {
+				for (int j = 0; j < halfLength; j++) {
+					final double c = butterflyCos[j*twiddleStep];
+					final double s = butterflySin[j*twiddleStep];
+					final int top = start + j;
+					final int bottom = top + halfLength;
+					final double tr = c*real[bottom] + s*imaginary[bottom];
+					final double ti = c*imaginary[bottom] - s*real[bottom];
+					real[bottom] = real[top] - tr;
+					imaginary[bottom] = imaginary[top] - ti;
+					real[top] += tr;
+					imaginary[top] += ti;
+				}
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,73 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Frontend kernels as plain sequential loops. Every kernel performs its operations in index
+ * order, so results are identical to the equivalent inline loops.
+ */
+public class ScalarFrontendKernels implements FrontendKernels {
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_KERNELS_CLASS = "ptemplin.nlp.asr.frontend.VectorFrontendKernels";
+	
+	/**
+	 * Creates the SIMD kernels if the Vector API module has been added to the running JVM
+	 * (with --add-modules jdk.incubator.vector), and these scalar kernels otherwise. The SIMD
+	 * kernels are only loaded by name, so this class never links against the module itself,
+	 * and they need not have been compiled at all.
+	 *
+	 * @return the fastest kernels available
+	 */
+	public static FrontendKernels createFastest() {
+		if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			try {
+				return (FrontendKernels) Class.forName(VECTOR_KERNELS_CLASS).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError ex) {
+				// fall back to the scalar kernels
+			}
+		}
+		return new ScalarFrontendKernels();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void window(int[] samples, int startIndex, double[] window, double[] out, int outOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			out[outOffset + i] = samples[startIndex + i]*window[i];
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void multiply(double[] data, double[] weights, int length) {
+		for (int i = 0; i < length; i++) {
+			data[i] *= weights[i];
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void squaredMagnitude(double[] real, double[] imaginary, double[] power, int length) {
+		for (int i = 0; i < length; i++) {
+			power[i] = real[i]*real[i] + imaginary[i]*imaginary[i];
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += a[aOffset + i]*b[bOffset + i];
+		}
+		return sum;
+	}
+	
+}
@@ -15,4 +15,21 @@ public interface SpectralAnalyzer {
      */
     List<int[]> computeFeatureVectors(int[] sample);
 
+    /**
+     * Computes the spectral feature vectors from the given raw audio sample as a single
+     * time-major matrix.
+     *
+     * @param sample of raw audio
+     * @return the spectral feature vectors computed from this sample, one frame per row
+     */
+    FeatureMatrix computeFeatureMatrix(int[] sample);
+
+    /**
+     * Describes every setting which affects the computed features, such that two analyzers
+     * with the same configuration produce the same features for the same audio.
+     *
+     * @return the configuration of this analyzer
+     */
+    String getConfiguration();
+
 }
@@ -0,0 +1,25 @@
+package ptemplin.nlp.asr.frontend;
+
+/**
+ * Computes spectral feature vectors incrementally from audio data pushed in chunks of any
+ * size, delivering each feature vector to a {@link FeatureVectorListener} as soon as its frame
+ * is complete.
+ */
+public interface StreamingSpectralAnalyzer {
+
+    /**
+     * Pushes the next chunk of raw audio onto the stream.
+     *
+     * @param chunk of raw audio
+     * @param offset of the first sample in the chunk
+     * @param length of the chunk
+     */
+    void process(int[] chunk, int offset, int length);
+
+    /**
+     * Ends the stream, delivering the feature vectors of any incomplete trailing frames, and
+     * resets the analyzer so a new stream can be started.
+     */
+    void end();
+
+}
@@ -0,0 +1,100 @@
+package ptemplin.nlp.asr.frontend;
+
+import java.util.Arrays;
+
+/**
+ * Computes only a range of the coefficients of the DCT-I of a fixed length input, as a product
+ * with a precomputed basis matrix of one row per coefficient. The coefficients are those of
+ * {@link org.apache.commons.math3.transform.FastCosineTransformer} with
+ * {@link org.apache.commons.math3.transform.DctNormalization#STANDARD_DCT_I},
+ *
+ *     y[k] = (x[0] + (-1)^k x[N-1])/2 + sum_{n=1..N-2} x[n]*cos(pi*n*k/(N-1))
+ *
+ * up to rounding, but the input may be of any length of at least two rather than 2^m + 1. A
+ * weight per coefficient, such as a lifter, can be folded into the basis.
+ */
+public class TruncatedCosineTransform {
+	
+	private final int inputLength;
+	private final int firstCoefficient;
+	private final int numCoefficients;
+	// row r holds the basis of coefficient firstCoefficient + r
+	private final double[] basis;
+	
+	/**
+	 * @param inputLength the number of values transformed, such as the size of a filterbank
+	 * @param firstCoefficient the index of the first coefficient computed
+	 * @param numCoefficients the number of consecutive coefficients computed
+	 */
+	public TruncatedCosineTransform(int inputLength, int firstCoefficient, int numCoefficients) {
+		this(inputLength, firstCoefficient, numCoefficients, null);
+	}
+	
+	/**
+	 * @param inputLength the number of values transformed, such as the size of a filterbank
+	 * @param firstCoefficient the index of the first coefficient computed
+	 * @param numCoefficients the number of consecutive coefficients computed
+	 * @param weights to multiply each computed coefficient by, or null for none
+	 */
+	public TruncatedCosineTransform(int inputLength, int firstCoefficient, int numCoefficients, double[] weights) {
+		if (inputLength < 2) {
+			throw new IllegalArgumentException("DCT-I input must have at least 2 values: " + inputLength);
+		}
+		if (weights != null && weights.length != numCoefficients) {
+			throw new IllegalArgumentException("Expected " + numCoefficients + " weights but got " + weights.length);
+		}
+		this.inputLength = inputLength;
+		this.firstCoefficient = firstCoefficient;
+		this.numCoefficients = numCoefficients;
+		this.basis = new double[numCoefficients*inputLength];
+		final int n = inputLength - 1;
+		for (int r = 0; r < numCoefficients; r++) {
+			int k = firstCoefficient + r;
+			double weight = weights == null ? 1 : weights[r];
+			int rowOffset = r*inputLength;
+			basis[rowOffset] = 0.5*weight;
+			basis[rowOffset + n] = (k % 2 == 0 ? 0.5 : -0.5)*weight;
+			for (int i = 1; i < n; i++) {
+				// reduce n*k modulo the period 2(N-1) so the cosine is of a small argument
+				basis[rowOffset + i] = Math.cos(Math.PI*((long) i*k % (2*n))/n)*weight;
+			}
+		}
+	}
+	
+	/**
+	 * Computes the coefficients of the input, writing coefficient k to transformed[k] so that
+	 * the indices are those of the full transform.
+	 *
+	 * @param input of {@link #getInputLength()} values
+	 * @param transformed to write the coefficients to, which must hold at least
+	 *        firstCoefficient + numCoefficients values
+	 * @param kernels to compute the product with
+	 */
+	public void transform(double[] input, double[] transformed, FrontendKernels kernels) {
+		for (int r = 0; r < numCoefficients; r++) {
+			transformed[firstCoefficient + r] = kernels.dot(basis, r*inputLength, input, 0, inputLength);
+		}
+	}
+	
+	/**
+	 * @return a description of the transform, including a hash of its basis, for keying
+	 *         anything derived from it
+	 */
+	public String getConfiguration() {
+		return "TruncatedCosineTransform(" + inputLength + "," + firstCoefficient + "," + numCoefficients + ")"
+				+ String.format(" basis=%08x", Arrays.hashCode(basis));
+	}
+	
+	public int getInputLength() {
+		return inputLength;
+	}
+	
+	public int getFirstCoefficient() {
+		return firstCoefficient;
+	}
+	
+	public int getNumCoefficients() {
+		return numCoefficients;
+	}
+	
+}
@@ -16,6 +16,10 @@ public class VectorQuantizer {
 	 * @param trainingData
 	 */
 	public VectorQuantizer(List<int[]> trainingData) {
+		this(FeatureMatrix.fromVectors(trainingData));
+	}
+	
+	public VectorQuantizer(FeatureMatrix trainingData) {
 		trainCodebook(trainingData);
 	}
 	
@@ -24,7 +28,7 @@ public class VectorQuantizer {
 	 * the the center of each cluster.
 	 * @param trainingData to use to train
 	 */
-	private void trainCodebook(List<int[]> trainingData) {
+	private void trainCodebook(FeatureMatrix trainingData) {
 		codebook = KMeans.cluster(trainingData, CODEBOOK_SIZE);
 	}
 	
@@ -47,6 +51,26 @@ public class VectorQuantizer {
 		return nearestIndex;
 	}
 	
+	/**
+	 * Quantizes the given frame of the observation matrix in place.
+	 * @param observations containing the observation to be quantized
+	 * @param frame of the observation
+	 * @return the quantization of the observation as an index in the codebook
+	 */
+	public int quantizeObservation(FeatureMatrix observations, int frame) {
+		int nearestIndex = 0;
+		double closestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < codebook.size(); i++) {
+			double distance = KMeans.getEuclideanDistance(observations.getData(), observations.getOffset(frame),
+					observations.getDimension(), codebook.get(i));
+			if (distance < closestDistance) {
+				nearestIndex = i;
+				closestDistance = distance;
+			}
+		}
+		return nearestIndex;
+	}
+	
 	public int quantizeObservation(double[] observation) {
 		int[] obs = new int[observation.length];
 		for (int i = 0; i < observation.length; i++) {
@@ -4,38 +4,188 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.transform.DctNormalization;
 import org.apache.commons.math3.transform.DftNormalization;
 import org.apache.commons.math3.transform.FastCosineTransformer;
 import org.apache.commons.math3.transform.FastFourierTransformer;
 import org.apache.commons.math3.transform.TransformType;
+import org.apache.commons.math3.util.FastMath;
 
+import ptemplin.nlp.asr.frontend.CommonsMathPowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.FrontendKernels;
+import ptemplin.nlp.asr.frontend.KernelPowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.PowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.ScalarFrontendKernels;
+import ptemplin.nlp.asr.frontend.TruncatedCosineTransform;
 import ptemplin.nlp.asr.frontend.SpectralAnalyzer;
 import ptemplin.nlp.asr.io.SpeechFileReader;
 import ptemplin.nlp.asr.io.SpeechSample;
+import ptemplin.nlp.asr.util.FastLog;
 
+/**
+ * Computes MFCC feature vectors over overlapping frames. Instances keep per-instance state in
+ * their power spectrum transformer, so each thread should use its own frontend.
+ */
 public class LincolnFrontend implements SpectralAnalyzer {
 
 	private static final int SAMPLE_RATE = 12000;
 	// 20ms frame length
-	private static final int FRAME_LENGTH = 240;
-	private static final int PADDED_FRAME_LENGTH = 256;
+	static final int FRAME_LENGTH = 240;
+	public static final int PADDED_FRAME_LENGTH = 256;
 	private static final float FRAMES_PER_SECOND = SAMPLE_RATE/PADDED_FRAME_LENGTH;
 	private static final int PADDING_LENGTH = (PADDED_FRAME_LENGTH - FRAME_LENGTH)/2;
 	
 	public static final int NUM_MFCC_COMPONENTS = 13;
 	
 	private static final double[] HAMMING_WINDOW = generateHammingWindow(FRAME_LENGTH);
+	private static final double[] PREEMPHASIS_WEIGHTS = generatePreemphasisWeights(PADDED_FRAME_LENGTH);
+	private static final DctNormalization FULL_DCT_NORMALIZATION = DctNormalization.STANDARD_DCT_I;
 	
 	private final MelFrequencyFilterBank melFilter;
-	private final FastFourierTransformer fftExecutor;
+	private final PowerSpectrumTransformer powerSpectrumTransformer;
 	private final FastCosineTransformer fctExecutor;
+	private final FrontendKernels kernels;
+	// computes only the kept cepstra, or null to use the full DCT-I
+	private final TruncatedCosineTransform truncatedDct;
+	private final boolean useFastLog;
+	
+	// per-instance scratch buffers, only allocated when reusing buffers
+	private final boolean reuseBuffers;
+	private double[] frameBuffer;
+	private double[] powerSpectrumBuffer;
+	private double[] melBuffer;
+	private double[][] dctFftBuffer;
+	private double[] dctSinTable;
+	private double[] dctCosTable;
+	private double[] cepstrumBuffer;
 	
 	public LincolnFrontend() {
-		this.melFilter = new MelFrequencyFilterBank();
-		this.fftExecutor = new FastFourierTransformer(DftNormalization.STANDARD);
-		this.fctExecutor = new FastCosineTransformer(DctNormalization.STANDARD_DCT_I);
+		this(false);
+	}
+	
+	/**
+	 * Creates a frontend which, if reuseBuffers is set, computes every frame in buffers owned
+	 * by this instance and so makes no allocations per frame. The features are identical to
+	 * those of the default frontend.
+	 *
+	 * @param reuseBuffers whether to compute frames in reusable per-instance buffers
+	 */
+	public LincolnFrontend(boolean reuseBuffers) {
+		this(reuseBuffers, new CommonsMathPowerSpectrumTransformer());
+	}
+	
+	/**
+	 * Creates a frontend computing power spectra with the given transformer, such as a
+	 * {@link ptemplin.nlp.asr.frontend.RealFftPowerSpectrumTransformer} of {@link #PADDED_FRAME_LENGTH}.
+	 *
+	 * @param reuseBuffers whether to compute frames in reusable per-instance buffers
+	 * @param powerSpectrumTransformer to compute the power spectrum of each frame
+	 */
+	public LincolnFrontend(boolean reuseBuffers, PowerSpectrumTransformer powerSpectrumTransformer) {
+		this(reuseBuffers, powerSpectrumTransformer, new ScalarFrontendKernels());
+	}
+	
+	/**
+	 * Creates a frontend which reuses its buffers and computes the windowing, pre-emphasis and
+	 * filterbank of every frame with the given kernels.
+	 *
+	 * @param powerSpectrumTransformer to compute the power spectrum of each frame
+	 * @param kernels to compute the per-frame arithmetic with
+	 */
+	public LincolnFrontend(PowerSpectrumTransformer powerSpectrumTransformer, FrontendKernels kernels) {
+		this(true, powerSpectrumTransformer, kernels);
+	}
+	
+	/**
+	 * Creates a frontend which reuses its buffers and computes only the kept cepstra, as a
+	 * product with a precomputed DCT basis, from a filterbank of any size. With the default 33
+	 * filters the features differ from those of the full DCT only by rounding.
+	 *
+	 * @param powerSpectrumTransformer to compute the power spectrum of each frame
+	 * @param kernels to compute the per-frame arithmetic with
+	 * @param numFilters in the mel filterbank, at least {@link #NUM_MFCC_COMPONENTS}
+	 * @throws IllegalArgumentException if there are too few filters, or too many for them to
+	 *         have distinct band edges
+	 */
+	public LincolnFrontend(PowerSpectrumTransformer powerSpectrumTransformer, FrontendKernels kernels, int numFilters) {
+		this(powerSpectrumTransformer, kernels, numFilters, false);
+	}
+	
+	/**
+	 * Creates a frontend as {@link #LincolnFrontend(PowerSpectrumTransformer, FrontendKernels, int)}
+	 * which, if useFastLog is set, takes the log power of the filterbank outputs with
+	 * {@link FastLog}. This moves each log power by at most 10*{@link FastLog#MAX_LOG10_ERROR}
+	 * dB, and so each cepstrum by at most numFilters times that.
+	 *
+	 * @param powerSpectrumTransformer to compute the power spectrum of each frame
+	 * @param kernels to compute the per-frame arithmetic with
+	 * @param numFilters in the mel filterbank, at least {@link #NUM_MFCC_COMPONENTS}
+	 * @param useFastLog whether to use the approximate logarithm
+	 * @throws IllegalArgumentException if there are too few filters, or too many for them to
+	 *         have distinct band edges
+	 */
+	public LincolnFrontend(PowerSpectrumTransformer powerSpectrumTransformer, FrontendKernels kernels, int numFilters,
+			boolean useFastLog) {
+		this(true, powerSpectrumTransformer, kernels, new MelFrequencyFilterBank(numFilters), true, useFastLog);
+	}
+	
+	private LincolnFrontend(boolean reuseBuffers, PowerSpectrumTransformer powerSpectrumTransformer, FrontendKernels kernels) {
+		this(reuseBuffers, powerSpectrumTransformer, kernels, new MelFrequencyFilterBank(), false, false);
+	}
+	
+	private LincolnFrontend(boolean reuseBuffers, PowerSpectrumTransformer powerSpectrumTransformer, FrontendKernels kernels,
+			MelFrequencyFilterBank melFilter, boolean useTruncatedDct, boolean useFastLog) {
+		if (useTruncatedDct) {
+			if (melFilter.getSize() < NUM_MFCC_COMPONENTS) {
+				throw new IllegalArgumentException("Filterbank of size " + melFilter.getSize()
+						+ " cannot give " + NUM_MFCC_COMPONENTS + " cepstra");
+			}
+			// the first cepstrum is discarded
+			this.truncatedDct = new TruncatedCosineTransform(melFilter.getSize(), 1, NUM_MFCC_COMPONENTS - 1);
+		} else {
+			this.truncatedDct = null;
+		}
+		this.melFilter = melFilter;
+		this.powerSpectrumTransformer = powerSpectrumTransformer;
+		this.fctExecutor = new FastCosineTransformer(FULL_DCT_NORMALIZATION);
+		this.kernels = kernels;
+		this.useFastLog = useFastLog;
+		this.reuseBuffers = reuseBuffers;
+		if (reuseBuffers) {
+			allocateBuffers();
+		}
+	}
+	
+	/**
+	 * Creates a frontend using the SIMD kernels if the Vector API is available to the JVM, and
+	 * the scalar kernels otherwise. Features can differ from those of the scalar frontend by
+	 * rounding in the filterbank sums, so by one after truncation in rare cases.
+	 *
+	 * @return a frontend using the fastest available kernels
+	 */
+	public static LincolnFrontend createWithFastestKernels() {
+		FrontendKernels kernels = ScalarFrontendKernels.createFastest();
+		return new LincolnFrontend(new KernelPowerSpectrumTransformer(kernels), kernels);
+	}
+	
+	private void allocateBuffers() {
+		frameBuffer = new double[PADDED_FRAME_LENGTH];
+		powerSpectrumBuffer = new double[PADDED_FRAME_LENGTH];
+		melBuffer = new double[melFilter.getSize()];
+		cepstrumBuffer = new double[melFilter.getSize()];
+		if (truncatedDct != null) {
+			return;
+		}
+		// the DCT-I of n+1 points is computed from an FFT of n points
+		final int n = melFilter.getSize() - 1;
+		dctFftBuffer = new double[2][n];
+		dctSinTable = new double[n >> 1];
+		dctCosTable = new double[n >> 1];
+		for (int i = 1; i < (n >> 1); i++) {
+			dctSinTable[i] = FastMath.sin(i * FastMath.PI / n);
+			dctCosTable[i] = FastMath.cos(i * FastMath.PI / n);
+		}
 	}
 
 	/**
@@ -46,11 +196,17 @@ public class LincolnFrontend implements SpectralAnalyzer {
 		List<int[]> frameMFCCs = new ArrayList<>();
 		int startIndex = 0;
 		while (startIndex < sample.length) {
-			int[] frame = Arrays.copyOfRange(sample, startIndex, Math.min(startIndex + FRAME_LENGTH, sample.length));
-			double[] rawMFCC = computeFrameMFCC(frame);
-			// discard first component, round, and truncate
-			int[] roundedMFCC = new int[NUM_MFCC_COMPONENTS];
-			for (int i = 1; i < roundedMFCC.length; i++) { roundedMFCC[i-1] = (int) rawMFCC[i]; }
+			int[] roundedMFCC;
+			if (reuseBuffers) {
+				roundedMFCC = new int[NUM_MFCC_COMPONENTS];
+				computeFeatureVector(sample, startIndex, roundedMFCC);
+			} else {
+				int[] frame = Arrays.copyOfRange(sample, startIndex, Math.min(startIndex + FRAME_LENGTH, sample.length));
+				double[] rawMFCC = computeFrameMFCC(frame);
+				// discard first component, round, and truncate
+				roundedMFCC = new int[NUM_MFCC_COMPONENTS];
+				for (int i = 1; i < roundedMFCC.length; i++) { roundedMFCC[i-1] = (int) rawMFCC[i]; }
+			}
 			frameMFCCs.add(roundedMFCC);
 			// shift frame by length/2
 			startIndex += FRAME_LENGTH/2;
@@ -58,6 +214,122 @@ public class LincolnFrontend implements SpectralAnalyzer {
 		return frameMFCCs;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FeatureMatrix computeFeatureMatrix(int[] sample) {
+		final int numFrames = getNumFrames(sample);
+		FeatureMatrix features = new FeatureMatrix(numFrames, NUM_MFCC_COMPONENTS);
+		double[] data = features.getData();
+		for (int t = 0; t < numFrames; t++) {
+			double[] rawMFCC = computeFrameMFCC(sample, t);
+			// discard first component and truncate
+			int offset = features.getOffset(t);
+			for (int i = 1; i < NUM_MFCC_COMPONENTS; i++) { data[offset + i-1] = (int) rawMFCC[i]; }
+		}
+		return features;
+	}
+	
+	/**
+	 * Computes the cepstra which {@link #computeFeatureMatrix(int[])} truncates to features,
+	 * with all {@link #NUM_MFCC_COMPONENTS} components of every frame, the first included.
+	 */
+	public FeatureMatrix computeCepstra(int[] sample) {
+		final int numFrames = getNumFrames(sample);
+		FeatureMatrix cepstra = new FeatureMatrix(numFrames, NUM_MFCC_COMPONENTS);
+		for (int t = 0; t < numFrames; t++) {
+			System.arraycopy(computeFrameMFCC(sample, t), 0, cepstra.getData(), cepstra.getOffset(t), NUM_MFCC_COMPONENTS);
+		}
+		return cepstra;
+	}
+	
+	private static int getNumFrames(int[] sample) {
+		final int frameShift = FRAME_LENGTH/2;
+		return (sample.length + frameShift - 1)/frameShift;
+	}
+	
+	// the cepstrum of frame t of the sample, shifted by half a frame per frame
+	private double[] computeFrameMFCC(int[] sample, int t) {
+		int startIndex = t*(FRAME_LENGTH/2);
+		int frameLength = Math.min(FRAME_LENGTH, sample.length - startIndex);
+		if (reuseBuffers) {
+			return computeFrameMFCC(sample, startIndex, frameLength);
+		}
+		return computeFrameMFCC(Arrays.copyOfRange(sample, startIndex, startIndex + frameLength));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getConfiguration() {
+		return "LincolnFrontend"
+				+ " sampleRate=" + SAMPLE_RATE
+				+ " frameLength=" + FRAME_LENGTH
+				+ " paddedFrameLength=" + PADDED_FRAME_LENGTH
+				+ String.format(" window=%08x", Arrays.hashCode(HAMMING_WINDOW))
+				+ " powerSpectrum=" + powerSpectrumTransformer.getClass().getName()
+				+ " kernels=" + kernels.getClass().getName()
+				+ String.format(" preemphasis=%08x", Arrays.hashCode(PREEMPHASIS_WEIGHTS))
+				+ " filterBank=" + melFilter.getConfiguration()
+				+ " log=" + (useFastLog ? FastLog.getConfiguration() : "exact")
+				+ " dct=" + (truncatedDct != null ? truncatedDct.getConfiguration() : "full " + FULL_DCT_NORMALIZATION)
+				+ " mfcc=" + NUM_MFCC_COMPONENTS;
+	}
+	
+	/**
+	 * Computes the feature vector of the frame starting at the given index of the sample into
+	 * the given vector, without allocating. Requires a frontend which reuses its buffers.
+	 *
+	 * @param sample of raw audio
+	 * @param startIndex of the frame in the sample
+	 * @param featureVector to write the {@link #NUM_MFCC_COMPONENTS} features to
+	 */
+	public void computeFeatureVector(int[] sample, int startIndex, int[] featureVector) {
+		computeFeatureVector(sample, startIndex, sample.length, featureVector);
+	}
+	
+	/**
+	 * Computes the feature vector of the frame starting at the given index of the sample into
+	 * the given vector, treating the sample as ending at endIndex. Frames running past the end
+	 * of the sample are zero-padded, as in {@link #computeFeatureVectors(int[])}.
+	 *
+	 * @param sample of raw audio
+	 * @param startIndex of the frame in the sample
+	 * @param endIndex of the sample, exclusive
+	 * @param featureVector to write the {@link #NUM_MFCC_COMPONENTS} features to
+	 */
+	public void computeFeatureVector(int[] sample, int startIndex, int endIndex, int[] featureVector) {
+		if (!reuseBuffers) {
+			throw new IllegalStateException("Frontend was not created to reuse its buffers");
+		}
+		int frameLength = Math.min(FRAME_LENGTH, endIndex - startIndex);
+		double[] cepstrum = computeFrameMFCC(sample, startIndex, frameLength);
+		// discard first component and truncate
+		for (int i = 1; i < NUM_MFCC_COMPONENTS; i++) { featureVector[i-1] = (int) cepstrum[i]; }
+		featureVector[NUM_MFCC_COMPONENTS-1] = 0;
+	}
+	
+	private double[] computeFrameMFCC(int[] sample, int startIndex, int frameLength) {
+		Arrays.fill(frameBuffer, 0);
+		kernels.window(sample, startIndex, HAMMING_WINDOW, frameBuffer, PADDING_LENGTH, frameLength);
+		powerSpectrumTransformer.computePowerSpectrum(frameBuffer, powerSpectrumBuffer);
+		kernels.multiply(powerSpectrumBuffer, PREEMPHASIS_WEIGHTS, PADDED_FRAME_LENGTH);
+		melFilter.filter(powerSpectrumBuffer, FRAMES_PER_SECOND, melBuffer, kernels);
+		if (useFastLog) {
+			convertToApproximateLogPowerSpectrum(melBuffer);
+		} else {
+			convertToLogPowerSpectrum(melBuffer);
+		}
+		if (truncatedDct != null) {
+			truncatedDct.transform(melBuffer, cepstrumBuffer, kernels);
+		} else {
+			getDiscreteCosineTransform(melBuffer, cepstrumBuffer);
+		}
+		return cepstrumBuffer;
+	}
+	
 	private double[] computeFrameMFCC(int[] frame) {
 		double[] preprocessedFrame = preprocess(frame);
 		double[] powerSpectrum = getPowerSpectrum(preprocessedFrame);
@@ -88,11 +360,8 @@ public class LincolnFrontend implements SpectralAnalyzer {
 	}
 	
 	private double[] getPowerSpectrum(double[] data) {
-		Complex[] complexSpectrum = fftExecutor.transform(data, TransformType.FORWARD);
-		double[] powerSpectrum = new double[complexSpectrum.length];
-		for (int i = 0; i < complexSpectrum.length; i++) {
-			powerSpectrum[i] = Math.pow(complexSpectrum[i].abs(), 2);
-		}
+		double[] powerSpectrum = new double[data.length];
+		powerSpectrumTransformer.computePowerSpectrum(data, powerSpectrum);
 		return powerSpectrum;
 	}
 	
@@ -103,16 +372,62 @@ public class LincolnFrontend implements SpectralAnalyzer {
 		}
 	}
 	
+	private static double[] generatePreemphasisWeights(int length) {
+		final double FREQ_MULTIPLIER = FRAMES_PER_SECOND;
+		double[] weights = new double[length];
+		for (int i = 0; i < length; i++) {
+			weights[i] = 1 + Math.pow((i*FREQ_MULTIPLIER)/500, 2);
+		}
+		return weights;
+	}
+	
 	private static void convertToLogPowerSpectrum(double[] powerSpectrum) {
 		for (int i = 0; i < powerSpectrum.length; i++) {
 			powerSpectrum[i] = 10*Math.log10(powerSpectrum[i]);
 		}
 	}
 	
+	private static void convertToApproximateLogPowerSpectrum(double[] powerSpectrum) {
+		for (int i = 0; i < powerSpectrum.length; i++) {
+			powerSpectrum[i] = 10*FastLog.log10(powerSpectrum[i]);
+		}
+	}
+	
 	private double[] getDiscreteCosineTransform(double[] logPowerSpectrum) {
 		return fctExecutor.transform(logPowerSpectrum, TransformType.FORWARD);
 	}
 	
+	/**
+	 * Computes the same DCT-I as {@link FastCosineTransformer#transform(double[], TransformType)}
+	 * in the given output buffer, using the precomputed tables and the scratch FFT buffer.
+	 */
+	private void getDiscreteCosineTransform(double[] f, double[] transformed) {
+		final int n = f.length - 1;
+		final double[] x = dctFftBuffer[0];
+		Arrays.fill(dctFftBuffer[1], 0);
+		x[0] = 0.5 * (f[0] + f[n]);
+		x[n >> 1] = f[n >> 1];
+		double t1 = 0.5 * (f[0] - f[n]);
+		for (int i = 1; i < (n >> 1); i++) {
+			final double a = 0.5 * (f[i] + f[n - i]);
+			final double b = dctSinTable[i] * (f[i] - f[n - i]);
+			final double c = dctCosTable[i] * (f[i] - f[n - i]);
+			x[i] = a - b;
+			x[n - i] = a + b;
+			t1 += c;
+		}
+		FastFourierTransformer.transformInPlace(dctFftBuffer, DftNormalization.STANDARD, TransformType.FORWARD);
+		final double[] yReal = dctFftBuffer[0];
+		final double[] yImaginary = dctFftBuffer[1];
+		transformed[0] = yReal[0];
+		transformed[1] = t1;
+		for (int i = 1; i < (n >> 1); i++) {
+			transformed[2 * i] = yReal[i];
+			transformed[2 * i + 1] = transformed[2 * i - 1] - yImaginary[i];
+		}
+		transformed[n] = yReal[n >> 1];
+	}
+	
 	public static void main(String[] args) throws Exception {
 		LincolnFrontend analyzer = new LincolnFrontend();
 		List<int[]> observations = analyzer.computeObservationVectorsForPhone("R");
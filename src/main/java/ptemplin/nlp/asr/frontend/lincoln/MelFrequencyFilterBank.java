@@ -1,6 +1,12 @@
 package ptemplin.nlp.asr.frontend.lincoln;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import ptemplin.nlp.asr.frontend.FilterBank;
+import ptemplin.nlp.asr.frontend.FrontendKernels;
+import ptemplin.nlp.asr.frontend.ScalarFrontendKernels;
 
 public class MelFrequencyFilterBank implements FilterBank {
 	
@@ -13,6 +19,14 @@ public class MelFrequencyFilterBank implements FilterBank {
 	private static final int DEFAULT_LOW = 0;
 	private static final int DEFAULT_HIGH = 2250;
 	
+	// compiled weights shared between all filterbanks with the same configuration
+	private static final Map<WeightTableKey, WeightTable> WEIGHT_TABLE_CACHE = new ConcurrentHashMap<>();
+	
+	private static final FrontendKernels SCALAR_KERNELS = new ScalarFrontendKernels();
+	
+	// the most recently used weights of this filterbank, to avoid a cache lookup per frame
+	private volatile WeightTable weightTable;
+	
 	public MelFrequencyFilterBank() {
 		this(DEFAULT_SIZE);
 	}
@@ -21,6 +35,12 @@ public class MelFrequencyFilterBank implements FilterBank {
 		this(size, DEFAULT_LOW, DEFAULT_HIGH);
 	}
 	
+	/**
+	 * @param size the number of filters
+	 * @param low of the range the filters are spaced over on the mel scale
+	 * @param high of the range the filters are spaced over on the mel scale
+	 * @throws IllegalArgumentException if the filters are too many to have distinct band edges
+	 */
 	public MelFrequencyFilterBank(int size, int low, int high) {
 		this.size = size;
 		this.low = low;
@@ -32,16 +52,67 @@ public class MelFrequencyFilterBank implements FilterBank {
 			float currentMel = interval*(i);
 			frequencyBins[i] = (int) (700*(Math.pow(10, currentMel/2595) - 1));
 		}
+		// filters sharing a band edge would have infinite slopes, and so NaN weights
+		for (int i = 1; i < frequencyBins.length; i++) {
+			if (frequencyBins[i] <= frequencyBins[i-1]) {
+				throw new IllegalArgumentException("Filterbank of " + size + " filters from " + low + " to " + high
+						+ " has band edges too close to resolve: " + frequencyBins[i-1] + " and " + frequencyBins[i] + " Hz");
+			}
+		}
 	}
 	
 	@Override
 	public double[] filter(double[] signal, double freqMultiplier) {
 		double[] coefficients = new double[frequencyBins.length];
+		filter(signal, freqMultiplier, coefficients);
+		return coefficients;
+	}
+	
+	@Override
+	public void filter(double[] signal, double freqMultiplier, double[] coefficients) {
+		filter(signal, freqMultiplier, coefficients, SCALAR_KERNELS);
+	}
+	
+	/**
+	 * Filters the signal as {@link #filter(double[], double, double[])}, computing each
+	 * coefficient as a dot product of the filter weights and the samples under the filter with
+	 * the given kernels.
+	 */
+	public void filter(double[] signal, double freqMultiplier, double[] coefficients, FrontendKernels kernels) {
+		WeightTable table = getWeightTable(freqMultiplier);
+		final int[] filterStarts = table.filterStarts;
+		final int[] firstSamples = table.firstSamples;
+		final double[] weights = table.weights;
+		for (int i = 0; i < frequencyBins.length; i++) {
+			coefficients[i] = kernels.dot(signal, firstSamples[i], weights, filterStarts[i], filterStarts[i+1] - filterStarts[i]);
+		}
+	}
+	
+	private WeightTable getWeightTable(double freqMultiplier) {
+		WeightTable table = weightTable;
+		if (table == null || table.freqMultiplier != freqMultiplier) {
+			WeightTableKey key = new WeightTableKey(size, low, high, freqMultiplier);
+			table = WEIGHT_TABLE_CACHE.computeIfAbsent(key, k -> compileWeightTable(freqMultiplier));
+			weightTable = table;
+		}
+		return table;
+	}
+	
+	/**
+	 * Evaluates the triangular band filters at every sample they cover, storing the non-zero
+	 * weights of each filter contiguously in the order they are to be accumulated.
+	 */
+	private WeightTable compileWeightTable(double freqMultiplier) {
+		int[] filterStarts = new int[frequencyBins.length + 1];
+		int[] firstSamples = new int[frequencyBins.length];
+		double[] weights = new double[16];
+		int numWeights = 0;
 		// for each frequency bin
-		for (int i = 0; i < coefficients.length; i++) {
+		for (int i = 0; i < frequencyBins.length; i++) {
+			filterStarts[i] = numWeights;
 			float peak = frequencyBins[i];
 			float rightEnd;
-			if (i == coefficients.length - 1) {
+			if (i == frequencyBins.length - 1) {
 				rightEnd = frequencyBins[i] + (int) (peak-frequencyBins[i-1]);
 			} else {
 				rightEnd = frequencyBins[i+1];
@@ -54,16 +125,35 @@ public class MelFrequencyFilterBank implements FilterBank {
 			}
 			float leftSlope = 1/(peak-leftEnd);
 			float rightSlope = 1/(peak-rightEnd);
+			int leftStart = (int) Math.ceil(leftEnd/freqMultiplier);
+			int peakIndex = (int) Math.ceil(peak/freqMultiplier);
+			int rightStop = (int) Math.floor(rightEnd/freqMultiplier);
+			int filterLength = Math.max(0, peakIndex - leftStart + 1) + Math.max(0, rightStop - peakIndex);
+			if (numWeights + filterLength > weights.length) {
+				weights = Arrays.copyOf(weights, Math.max(2*weights.length, numWeights + filterLength));
+			}
+			// both sides of the filter together cover a contiguous run of samples
+			firstSamples[i] = leftStart <= peakIndex ? leftStart : peakIndex + 1;
 			// the left side of the band filter
-			for (int samplei = (int) Math.ceil(leftEnd/freqMultiplier); samplei <= (int) Math.ceil(peak/freqMultiplier); samplei++) {
-				coefficients[i] += signal[samplei]*((samplei*freqMultiplier-leftEnd)*leftSlope);
+			for (int samplei = leftStart; samplei <= peakIndex; samplei++) {
+				weights[numWeights++] = (samplei*freqMultiplier-leftEnd)*leftSlope;
 			}
 			// the right side of the band filter
-			for (int samplei = (int) Math.ceil(peak/freqMultiplier) + 1; samplei <= (int) Math.floor(rightEnd/freqMultiplier); samplei++) {
-				coefficients[i] += signal[samplei]*((peak-samplei*freqMultiplier)*rightSlope);
+			for (int samplei = peakIndex + 1; samplei <= rightStop; samplei++) {
+				weights[numWeights++] = (peak-samplei*freqMultiplier)*rightSlope;
 			}
-		}	
-		return coefficients;
+		}
+		filterStarts[frequencyBins.length] = numWeights;
+		return new WeightTable(freqMultiplier, filterStarts, firstSamples, Arrays.copyOf(weights, numWeights));
+	}
+	
+	/**
+	 * @return a description of the filterbank, including its band edges, for keying anything
+	 *         derived from its outputs
+	 */
+	public String getConfiguration() {
+		return "MelFrequencyFilterBank size=" + size + " low=" + low + " high=" + high
+				+ " edges=" + Arrays.toString(frequencyBins);
 	}
 	
 	@Override
@@ -81,4 +171,59 @@ public class MelFrequencyFilterBank implements FilterBank {
 		return high;
 	}
 	
+	/**
+	 * The filterbank weights in compressed sparse row form: the weights of filter i are
+	 * weights[filterStarts[i]] to weights[filterStarts[i+1]-1], applied to consecutive samples
+	 * from firstSamples[i] onwards.
+	 */
+	private static final class WeightTable {
+		
+		private final double freqMultiplier;
+		private final int[] filterStarts;
+		private final int[] firstSamples;
+		private final double[] weights;
+		
+		private WeightTable(double freqMultiplier, int[] filterStarts, int[] firstSamples, double[] weights) {
+			this.freqMultiplier = freqMultiplier;
+			this.filterStarts = filterStarts;
+			this.firstSamples = firstSamples;
+			this.weights = weights;
+		}
+		
+	}
+	
+	private static final class WeightTableKey {
+		
+		private final int size;
+		private final int low;
+		private final int high;
+		private final double freqMultiplier;
+		
+		private WeightTableKey(int size, int low, int high, double freqMultiplier) {
+			this.size = size;
+			this.low = low;
+			this.high = high;
+			this.freqMultiplier = freqMultiplier;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof WeightTableKey)) {
+				return false;
+			}
+			WeightTableKey key = (WeightTableKey) other;
+			return size == key.size && low == key.low && high == key.high
+					&& Double.compare(freqMultiplier, key.freqMultiplier) == 0;
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = size;
+			hash = 31*hash + low;
+			hash = 31*hash + high;
+			return 31*hash + Double.hashCode(freqMultiplier);
+		}
+		
+	}
+	
 }
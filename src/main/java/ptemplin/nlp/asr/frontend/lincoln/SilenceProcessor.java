@@ -1,49 +1,63 @@
 package ptemplin.nlp.asr.frontend.lincoln;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class SilenceProcessor {
 	
-	private static final int LOWPASS_N = 50;
-	private static final double SILENCE_THRESHOLD_RATIO = 1.0/5;
+	static final int LOWPASS_N = 50;
+	static final double SILENCE_THRESHOLD_RATIO = 1.0/5;
 
+	/**
+	 * @return a description of how silence is trimmed, for keying anything derived from
+	 *         trimmed speech
+	 */
+	public static String getConfiguration() {
+		return "SilenceProcessor lowpassN=" + LOWPASS_N + " thresholdRatio=" + SILENCE_THRESHOLD_RATIO;
+	}
+	
 	public static int[] trimSilence(int[] speechSignal) {
-		int[] speechEnvelope = new int[speechSignal.length];
-		// low-pass filter
+		int[] speechEnvelope = computeEnvelope(speechSignal);
 		int max = 0;
-		for (int i = 0; i < speechSignal.length; i++) {
-			int sum = 0;
-			for (int j = i - LOWPASS_N; j <= i + LOWPASS_N; j++) {
-				if (j >= speechSignal.length || j < 0) {
-					continue;
-				}
-				sum += (int) Math.abs(speechSignal[j]);
-			}
-			int avg = sum/(LOWPASS_N-1);
-			if (max < avg) {
-				max = avg;
+		for (int i = 0; i < speechEnvelope.length; i++) {
+			if (max < speechEnvelope[i]) {
+				max = speechEnvelope[i];
 			}
-			speechEnvelope[i] = avg;
 		}
 		
-		// find the cross-threshold points and take first two
+		// the first and last cross-threshold points bound the speech
 		final int threshold = (int) (max*SILENCE_THRESHOLD_RATIO);
-		List<Integer> crossThresholdPoints = new ArrayList<>();
-		for (int i = 0; i < speechEnvelope.length; i++) {
-			if (speechEnvelope[i] >= threshold && (i == 0 || speechEnvelope[i-1] < threshold
-					|| i == speechEnvelope.length - 1 || speechEnvelope[i+1] < threshold)) {
-				crossThresholdPoints.add(i);
-			}
+		int startOfSpeech = 0;
+		while (speechEnvelope[startOfSpeech] < threshold) {
+			startOfSpeech++;
 		}
-		
-		int startOfSpeech = crossThresholdPoints.get(0);
-		int endOfSpeech = crossThresholdPoints.get(crossThresholdPoints.size() - 1);
-		int[] speech = new int[endOfSpeech-startOfSpeech+1];
-		for (int i = 0; i < speech.length; i++) {
-			speech[i] = speechSignal[startOfSpeech+i];
+		int endOfSpeech = speechEnvelope.length - 1;
+		while (speechEnvelope[endOfSpeech] < threshold) {
+			endOfSpeech--;
 		}
+		int[] speech = new int[endOfSpeech-startOfSpeech+1];
+		System.arraycopy(speechSignal, startOfSpeech, speech, 0, speech.length);
 		return speech;
 	}
 	
+	/**
+	 * Low-pass filters the magnitude of the signal with a moving average of 2*LOWPASS_N+1 taps,
+	 * kept as a running sum so the cost is independent of the filter length.
+	 */
+	static int[] computeEnvelope(int[] speechSignal) {
+		int[] speechEnvelope = new int[speechSignal.length];
+		int sum = 0;
+		// prime the window with the samples ahead of the first
+		for (int j = 0; j < LOWPASS_N && j < speechSignal.length; j++) {
+			sum += Math.abs(speechSignal[j]);
+		}
+		for (int i = 0; i < speechSignal.length; i++) {
+			if (i + LOWPASS_N < speechSignal.length) {
+				sum += Math.abs(speechSignal[i + LOWPASS_N]);
+			}
+			if (i - LOWPASS_N - 1 >= 0) {
+				sum -= Math.abs(speechSignal[i - LOWPASS_N - 1]);
+			}
+			speechEnvelope[i] = sum/(LOWPASS_N-1);
+		}
+		return speechEnvelope;
+	}
+	
 }
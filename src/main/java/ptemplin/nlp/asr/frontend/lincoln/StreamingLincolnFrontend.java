@@ -0,0 +1,102 @@
+package ptemplin.nlp.asr.frontend.lincoln;
+
+import static ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend.FRAME_LENGTH;
+import static ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend.NUM_MFCC_COMPONENTS;
+
+import ptemplin.nlp.asr.frontend.FeatureFrameListener;
+import ptemplin.nlp.asr.frontend.FeatureVectorListener;
+import ptemplin.nlp.asr.frontend.StreamingSpectralAnalyzer;
+
+/**
+ * Streams audio through the {@link LincolnFrontend}, producing exactly the feature vectors that
+ * {@link LincolnFrontend#computeFeatureVectors(int[])} would for the concatenated stream.
+ * Only the current frame is buffered, so each feature vector is delivered as soon as the last
+ * sample of its frame arrives. Frames can instead be passed as doubles to a
+ * {@link FeatureFrameListener}, such as the first stage of a feature pipeline. Not thread-safe.
+ */
+public class StreamingLincolnFrontend implements StreamingSpectralAnalyzer {
+
+	private static final int FRAME_SHIFT = FRAME_LENGTH/2;
+	
+	private final LincolnFrontend frontend;
+	private final FeatureVectorListener listener;
+	private final FeatureFrameListener frameListener;
+	private final int[] featureVectorBuffer;
+	private final double[] featureFrameBuffer;
+	
+	// the samples of the stream from the start of the next frame onwards
+	private final int[] frameBuffer;
+	private int bufferedSamples;
+	
+	public StreamingLincolnFrontend(FeatureVectorListener listener) {
+		this(listener, null);
+	}
+	
+	/**
+	 * Creates a frontend passing each frame of {@link LincolnFrontend#NUM_MFCC_COMPONENTS}
+	 * features to the listener in a reused buffer, and signalling the end of every stream.
+	 */
+	public StreamingLincolnFrontend(FeatureFrameListener frameListener) {
+		this(null, frameListener);
+	}
+	
+	private StreamingLincolnFrontend(FeatureVectorListener listener, FeatureFrameListener frameListener) {
+		this.frontend = new LincolnFrontend(true);
+		this.listener = listener;
+		this.frameListener = frameListener;
+		this.featureVectorBuffer = new int[NUM_MFCC_COMPONENTS];
+		this.featureFrameBuffer = new double[NUM_MFCC_COMPONENTS];
+		this.frameBuffer = new int[FRAME_LENGTH];
+		this.bufferedSamples = 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void process(int[] chunk, int offset, int length) {
+		int consumed = 0;
+		while (consumed < length) {
+			int copied = Math.min(FRAME_LENGTH - bufferedSamples, length - consumed);
+			System.arraycopy(chunk, offset + consumed, frameBuffer, bufferedSamples, copied);
+			bufferedSamples += copied;
+			consumed += copied;
+			if (bufferedSamples == FRAME_LENGTH) {
+				emitFrame(0, FRAME_LENGTH);
+				// keep the overlapping half as the start of the next frame
+				System.arraycopy(frameBuffer, FRAME_SHIFT, frameBuffer, 0, FRAME_LENGTH - FRAME_SHIFT);
+				bufferedSamples = FRAME_LENGTH - FRAME_SHIFT;
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void end() {
+		// the remaining frames start within the stream but run past its end
+		for (int startIndex = 0; startIndex < bufferedSamples; startIndex += FRAME_SHIFT) {
+			emitFrame(startIndex, bufferedSamples);
+		}
+		bufferedSamples = 0;
+		if (frameListener != null) {
+			frameListener.onEnd();
+		}
+	}
+	
+	private void emitFrame(int startIndex, int endIndex) {
+		if (listener != null) {
+			int[] featureVector = new int[NUM_MFCC_COMPONENTS];
+			frontend.computeFeatureVector(frameBuffer, startIndex, endIndex, featureVector);
+			listener.onFeatureVector(featureVector);
+		} else {
+			frontend.computeFeatureVector(frameBuffer, startIndex, endIndex, featureVectorBuffer);
+			for (int i = 0; i < NUM_MFCC_COMPONENTS; i++) {
+				featureFrameBuffer[i] = featureVectorBuffer[i];
+			}
+			frameListener.onFeatureFrame(featureFrameBuffer, 0);
+		}
+	}
+	
+}
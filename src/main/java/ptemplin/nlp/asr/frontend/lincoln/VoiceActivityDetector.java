@@ -0,0 +1,143 @@
+package ptemplin.nlp.asr.frontend.lincoln;
+
+import static ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor.LOWPASS_N;
+import static ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor.SILENCE_THRESHOLD_RATIO;
+
+/**
+ * Endpoints a stream of audio as it arrives, using the same moving-average envelope as
+ * {@link SilenceProcessor#trimSilence(int[])}. Since the maximum of the whole signal is not
+ * known ahead of time, the threshold adapts between a tracked noise floor and a slowly decaying
+ * peak. Speech starts once the envelope stays above the threshold for MIN_SPEECH_SAMPLES and
+ * ends once it stays below for HANGOVER_SAMPLES, so events are delayed by at most
+ * LOWPASS_N + HANGOVER_SAMPLES samples. Not thread-safe.
+ */
+public class VoiceActivityDetector {
+	
+	// 50ms at 12kHz
+	private static final int MIN_SPEECH_SAMPLES = 600;
+	// 200ms at 12kHz
+	private static final int HANGOVER_SAMPLES = 2400;
+	// the peak halves every 2s at 12kHz
+	private static final double PEAK_DECAY = Math.pow(0.5, 1.0/24000);
+	private static final double NOISE_FLOOR_RISE = 1e-4;
+	
+	private static final int WINDOW_LENGTH = 2*LOWPASS_N + 1;
+	
+	/**
+	 * Receives the boundaries of the speech detected in the stream, as sample indices from the
+	 * start of the stream.
+	 */
+	public interface Listener {
+		
+		void onSpeechStart(long sampleIndex);
+		
+		void onSpeechEnd(long sampleIndex);
+		
+	}
+	
+	private final Listener listener;
+	
+	// magnitudes of the last WINDOW_LENGTH samples, indexed by sample index mod WINDOW_LENGTH
+	private final int[] window;
+	private int windowSum;
+	private long samplesReceived;
+	
+	private double peak;
+	private double noiseFloor;
+	
+	private boolean inSpeech;
+	private long runStart;
+	private long lastAboveThreshold;
+	
+	public VoiceActivityDetector(Listener listener) {
+		this.listener = listener;
+		this.window = new int[WINDOW_LENGTH];
+		reset();
+	}
+	
+	/**
+	 * Pushes the next chunk of raw audio onto the stream.
+	 *
+	 * @param chunk of raw audio
+	 * @param offset of the first sample in the chunk
+	 * @param length of the chunk
+	 */
+	public void process(int[] chunk, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			int slot = (int) (samplesReceived % WINDOW_LENGTH);
+			// the slot holds the sample leaving the window of the envelope being completed
+			windowSum -= window[slot];
+			window[slot] = Math.abs(chunk[i]);
+			windowSum += window[slot];
+			samplesReceived++;
+			// the envelope is centered, so it lags the newest sample by LOWPASS_N
+			long envelopeIndex = samplesReceived - 1 - LOWPASS_N;
+			if (envelopeIndex >= 0) {
+				update(envelopeIndex, windowSum/(LOWPASS_N-1));
+			}
+		}
+	}
+	
+	/**
+	 * Ends the stream, completing the envelope over the trailing samples and ending any speech
+	 * in progress, and resets the detector so a new stream can be started.
+	 */
+	public void end() {
+		long firstPending = Math.max(0, samplesReceived - LOWPASS_N);
+		for (long envelopeIndex = firstPending; envelopeIndex < samplesReceived; envelopeIndex++) {
+			long leaving = envelopeIndex - LOWPASS_N - 1;
+			if (leaving >= 0) {
+				int slot = (int) (leaving % WINDOW_LENGTH);
+				windowSum -= window[slot];
+				window[slot] = 0;
+			}
+			update(envelopeIndex, windowSum/(LOWPASS_N-1));
+		}
+		if (inSpeech) {
+			listener.onSpeechEnd(lastAboveThreshold);
+		}
+		reset();
+	}
+	
+	private void reset() {
+		for (int i = 0; i < window.length; i++) {
+			window[i] = 0;
+		}
+		windowSum = 0;
+		samplesReceived = 0;
+		peak = 0;
+		noiseFloor = -1;
+		inSpeech = false;
+		runStart = -1;
+		lastAboveThreshold = -1;
+	}
+	
+	private void update(long envelopeIndex, int envelope) {
+		peak = Math.max(envelope, peak*PEAK_DECAY);
+		if (noiseFloor < 0 || envelope < noiseFloor) {
+			noiseFloor = envelope;
+		} else {
+			noiseFloor += (envelope - noiseFloor)*NOISE_FLOOR_RISE;
+		}
+		double threshold = noiseFloor + SILENCE_THRESHOLD_RATIO*(peak - noiseFloor);
+		boolean aboveThreshold = envelope > threshold;
+		if (aboveThreshold) {
+			lastAboveThreshold = envelopeIndex;
+		}
+		if (!inSpeech) {
+			if (!aboveThreshold) {
+				runStart = -1;
+			} else if (runStart < 0) {
+				runStart = envelopeIndex;
+			} else if (envelopeIndex - runStart + 1 >= MIN_SPEECH_SAMPLES) {
+				inSpeech = true;
+				listener.onSpeechStart(runStart);
+			}
+		} else if (!aboveThreshold && envelopeIndex - lastAboveThreshold >= HANGOVER_SAMPLES) {
+			inSpeech = false;
+			runStart = -1;
+			listener.onSpeechEnd(lastAboveThreshold);
+		}
+	}
+	
+}
@@ -0,0 +1,205 @@
+package ptemplin.nlp.asr.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A corpus of recordings packed into a single file by {@link CorpusArchivePacker}, read by
+ * memory-mapping it. The archive is, in little-endian order,
+ *
+ * <pre>
+ * int magic, version, numEntries, indexSize
+ * numEntries x (short labelLength, byte[labelLength] utf8Label, int sampleId,
+ *               long dataOffset, long dataLength, int sampleRate, short numChannels, short bitsPerSample)
+ * the 16-bit PCM of every entry, at its data offset from the start of the file
+ * </pre>
+ *
+ * Recordings are identified by a label and a sample id: the word recordings by
+ * {@link #getWordLabel(String)} and their number, and the phone recordings by
+ * {@link #getPhoneLabel(String)} and {@link #PHONE_SAMPLE_ID}. Archives are safe to read from
+ * several threads.
+ */
+public class CorpusArchive implements AutoCloseable {
+	
+	public static final String ARCHIVE_FILE_EXTENSION = ".corpus";
+	public static final int PHONE_SAMPLE_ID = 1;
+	
+	static final int MAGIC = 0x50524f43; // "CORP"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 4*Integer.BYTES;
+	
+	private static final String WORD_LABEL_PREFIX = "word/";
+	private static final String PHONE_LABEL_PREFIX = "phone/";
+	
+	private final String archivePath;
+	private final FileChannel channel;
+	// the whole archive, or null if it is too large to map at once
+	private final ByteBuffer mapped;
+	private final Map<String, Entry> entries;
+	private final Map<String, SortedSet<Integer>> sampleIds;
+	
+	private CorpusArchive(String archivePath, FileChannel channel, ByteBuffer mapped, Map<String, Entry> entries) {
+		this.archivePath = archivePath;
+		this.channel = channel;
+		this.mapped = mapped;
+		this.entries = entries;
+		this.sampleIds = new TreeMap<>();
+		for (Entry entry : entries.values()) {
+			sampleIds.computeIfAbsent(entry.label, label -> new TreeSet<>()).add(entry.sampleId);
+		}
+	}
+	
+	/**
+	 * Opens the archive and reads its index.
+	 *
+	 * @param archivePath of the archive
+	 * @return the open archive, which should be closed once no more recordings will be read
+	 * @throws IOException if the archive could not be read or is malformed
+	 */
+	public static CorpusArchive open(String archivePath) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(archivePath), StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+				throw new IOException("Not a corpus archive: " + archivePath);
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported corpus archive version " + version + ": " + archivePath);
+			}
+			int numEntries = header.getInt();
+			int indexSize = header.getInt();
+			if (numEntries < 0 || indexSize < 0 || HEADER_SIZE + (long) indexSize > size) {
+				throw new IOException("Corrupt corpus archive index: " + archivePath);
+			}
+			ByteBuffer mapped = null;
+			ByteBuffer index;
+			if (size <= Integer.MAX_VALUE) {
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+				index = mapped.duplicate().position(HEADER_SIZE).limit(HEADER_SIZE + indexSize).slice();
+			} else {
+				index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexSize);
+			}
+			index.order(ByteOrder.LITTLE_ENDIAN);
+			Map<String, Entry> entries = new HashMap<>(2*numEntries);
+			for (int e = 0; e < numEntries; e++) {
+				byte[] labelBytes = new byte[index.getShort() & 0xffff];
+				index.get(labelBytes);
+				Entry entry = new Entry(new String(labelBytes, StandardCharsets.UTF_8), index.getInt(),
+						index.getLong(), index.getLong(), index.getInt(), index.getShort(), index.getShort());
+				if (entry.dataOffset < 0 || entry.dataLength < 0 || entry.dataOffset + entry.dataLength > size
+						|| entry.numChannels <= 0 || entry.bitsPerSample != Short.SIZE
+						|| entry.dataLength % (entry.numChannels*Short.BYTES) != 0) {
+					throw new IOException("Corrupt corpus archive entry " + entry.label + "#" + entry.sampleId + ": " + archivePath);
+				}
+				entries.put(getKey(entry.label, entry.sampleId), entry);
+			}
+			return new CorpusArchive(archivePath, channel, mapped, entries);
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		} catch (RuntimeException ex) {
+			// an index running past its stated size
+			channel.close();
+			throw new IOException("Corrupt corpus archive: " + archivePath, ex);
+		}
+	}
+	
+	public static String getWordLabel(String word) {
+		return WORD_LABEL_PREFIX + word;
+	}
+	
+	public static String getPhoneLabel(String phoneme) {
+		return PHONE_LABEL_PREFIX + phoneme;
+	}
+	
+	/**
+	 * @return the recording with the label and sample id, as a view of the archive
+	 * @throws NoSuchFileException if the archive holds no such recording
+	 */
+	public WavFile getRecording(String label, int sampleId) throws IOException {
+		Entry entry = entries.get(getKey(label, sampleId));
+		if (entry == null) {
+			throw new NoSuchFileException(archivePath + ":" + getKey(label, sampleId));
+		}
+		ByteBuffer data;
+		if (mapped != null) {
+			data = mapped.duplicate().position((int) entry.dataOffset).limit((int) (entry.dataOffset + entry.dataLength)).slice();
+		} else {
+			data = channel.map(FileChannel.MapMode.READ_ONLY, entry.dataOffset, entry.dataLength);
+		}
+		return WavFile.wrap(entry.sampleRate, entry.numChannels, data.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+	}
+	
+	public boolean contains(String label, int sampleId) {
+		return entries.containsKey(getKey(label, sampleId));
+	}
+	
+	/**
+	 * @return the labels of the recordings in the archive, in order
+	 */
+	public Set<String> getLabels() {
+		return Collections.unmodifiableSet(sampleIds.keySet());
+	}
+	
+	/**
+	 * @return the sample ids of the recordings with the label, in order
+	 */
+	public SortedSet<Integer> getSampleIds(String label) {
+		SortedSet<Integer> ids = sampleIds.get(label);
+		return ids == null ? Collections.emptySortedSet() : Collections.unmodifiableSortedSet(ids);
+	}
+	
+	public int getNumRecordings() {
+		return entries.size();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	private static String getKey(String label, int sampleId) {
+		return label + "#" + sampleId;
+	}
+	
+	private static final class Entry {
+		
+		private final String label;
+		private final int sampleId;
+		private final long dataOffset;
+		private final long dataLength;
+		private final int sampleRate;
+		private final int numChannels;
+		private final int bitsPerSample;
+		
+		private Entry(String label, int sampleId, long dataOffset, long dataLength,
+				int sampleRate, short numChannels, short bitsPerSample) {
+			this.label = label;
+			this.sampleId = sampleId;
+			this.dataOffset = dataOffset;
+			this.dataLength = dataLength;
+			this.sampleRate = sampleRate;
+			this.numChannels = numChannels & 0xffff;
+			this.bitsPerSample = bitsPerSample & 0xffff;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,211 @@
+package ptemplin.nlp.asr.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import static ptemplin.nlp.asr.application.Constants.CORPUS_ARCHIVE_PATH;
+import static ptemplin.nlp.asr.application.Constants.PHONEME_SPEECH_SAMPLE_DIR;
+import static ptemplin.nlp.asr.application.Constants.WORD_SPEECH_SAMPLE_DIR;
+
+/**
+ * Packs the recordings of a corpus laid out as SpeechFileReader expects, word/n.wav under the
+ * word directory and PHONE_recording.wav under the phone directory, into a single
+ * {@link CorpusArchive}. The PCM of each recording is copied unchanged, in its original format.
+ */
+public class CorpusArchivePacker {
+	
+	private static final String WORD_FILE_EXTENSION = ".wav";
+	private static final String PHONE_FILE_SUFFIX = "_recording.wav";
+	// every recording's data is aligned to this many bytes
+	private static final int DATA_ALIGNMENT = 8;
+	
+	private final List<String> labels = new ArrayList<>();
+	private final List<Integer> sampleIds = new ArrayList<>();
+	private final List<Path> files = new ArrayList<>();
+	// the format of each recording, read when it is added
+	private final List<int[]> formats = new ArrayList<>();
+	
+	/**
+	 * Adds every word recording in the directory, labelled by the name of its subdirectory.
+	 *
+	 * @return the number of recordings added
+	 */
+	public int addWordRecordings(String wordDir) throws IOException, UnsupportedAudioFileException {
+		int numAdded = 0;
+		for (Path labelDir : listSorted(Paths.get(wordDir), "*")) {
+			if (!Files.isDirectory(labelDir)) {
+				continue;
+			}
+			for (Path file : listSorted(labelDir, "*" + WORD_FILE_EXTENSION)) {
+				String fileName = file.getFileName().toString();
+				String id = fileName.substring(0, fileName.length() - WORD_FILE_EXTENSION.length());
+				if (id.matches("\\d+")) {
+					addRecording(CorpusArchive.getWordLabel(labelDir.getFileName().toString()), Integer.parseInt(id), file);
+					numAdded++;
+				}
+			}
+		}
+		return numAdded;
+	}
+	
+	/**
+	 * Adds every phone recording in the directory, labelled by its phone.
+	 *
+	 * @return the number of recordings added
+	 */
+	public int addPhoneRecordings(String phoneDir) throws IOException, UnsupportedAudioFileException {
+		int numAdded = 0;
+		for (Path file : listSorted(Paths.get(phoneDir), "*" + PHONE_FILE_SUFFIX)) {
+			String fileName = file.getFileName().toString();
+			String phoneme = fileName.substring(0, fileName.length() - PHONE_FILE_SUFFIX.length());
+			addRecording(CorpusArchive.getPhoneLabel(phoneme), CorpusArchive.PHONE_SAMPLE_ID, file);
+			numAdded++;
+		}
+		return numAdded;
+	}
+	
+	public void addRecording(String label, int sampleId, Path file) throws IOException, UnsupportedAudioFileException {
+		WavFile recording = WavFile.open(file.toString());
+		labels.add(label);
+		sampleIds.add(sampleId);
+		files.add(file);
+		formats.add(new int[] {recording.getSampleRate(), recording.getNumChannels(), recording.getNumFrames()});
+	}
+	
+	/**
+	 * Writes every recording added to the archive, through a temporary file which is then
+	 * renamed, so an interrupted write never leaves a partial archive.
+	 */
+	public void write(String archivePath) throws IOException {
+		final int numEntries = files.size();
+		byte[][] labelBytes = new byte[numEntries][];
+		int indexSize = 0;
+		for (int e = 0; e < numEntries; e++) {
+			labelBytes[e] = labels.get(e).getBytes(StandardCharsets.UTF_8);
+			indexSize += Short.BYTES + labelBytes[e].length + Integer.BYTES + 2*Long.BYTES + Integer.BYTES + 2*Short.BYTES;
+		}
+		ByteBuffer index = ByteBuffer.allocate(CorpusArchive.HEADER_SIZE + indexSize).order(ByteOrder.LITTLE_ENDIAN);
+		index.putInt(CorpusArchive.MAGIC).putInt(CorpusArchive.VERSION).putInt(numEntries).putInt(indexSize);
+		long dataOffset = align(index.capacity());
+		long[] dataOffsets = new long[numEntries];
+		for (int e = 0; e < numEntries; e++) {
+			final int sampleRate = formats.get(e)[0];
+			final int numChannels = formats.get(e)[1];
+			final int numFrames = formats.get(e)[2];
+			long dataLength = (long) numFrames*numChannels*Short.BYTES;
+			dataOffsets[e] = dataOffset;
+			index.putShort((short) labelBytes[e].length).put(labelBytes[e]).putInt(sampleIds.get(e))
+					.putLong(dataOffset).putLong(dataLength).putInt(sampleRate)
+					.putShort((short) numChannels).putShort((short) Short.SIZE);
+			dataOffset = align(dataOffset + dataLength);
+		}
+		index.flip();
+		Path archive = Paths.get(archivePath).toAbsolutePath();
+		Files.createDirectories(archive.getParent());
+		Path tempFile = Files.createTempFile(archive.getParent(), archive.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				writeFully(channel, index, 0);
+				for (int e = 0; e < numEntries; e++) {
+					ShortBuffer samples = openRecording(e).getSamples();
+					ByteBuffer data = ByteBuffer.allocate(samples.remaining()*Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+					data.asShortBuffer().put(samples);
+					writeFully(channel, data, dataOffsets[e]);
+				}
+			}
+			Files.move(tempFile, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	private WavFile openRecording(int entry) throws IOException {
+		try {
+			return WavFile.open(files.get(entry).toString());
+		} catch (UnsupportedAudioFileException ex) {
+			throw new IOException("Recording changed while packing: " + files.get(entry), ex);
+		}
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	private static long align(long offset) {
+		return (offset + DATA_ALIGNMENT - 1)/DATA_ALIGNMENT*DATA_ALIGNMENT;
+	}
+	
+	private static List<Path> listSorted(Path dir, String glob) throws IOException {
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+			stream.forEach(paths::add);
+		}
+		paths.sort(null);
+		return paths;
+	}
+	
+	/**
+	 * Packs the corpus under res/ into the archive at {@link ptemplin.nlp.asr.application.Constants#CORPUS_ARCHIVE_PATH},
+	 * or the path given, and checks every recording reads back as from its file.
+	 */
+	public static void main(String[] args) throws Exception {
+		String archivePath = args.length > 0 ? args[0] : CORPUS_ARCHIVE_PATH;
+		CorpusArchivePacker packer = new CorpusArchivePacker();
+		int numWords = packer.addWordRecordings(WORD_SPEECH_SAMPLE_DIR);
+		int numPhones = packer.addPhoneRecordings(PHONEME_SPEECH_SAMPLE_DIR);
+		packer.write(archivePath);
+		System.out.println("Packed " + numWords + " word and " + numPhones + " phone recordings into " + archivePath);
+		
+		SpeechFileReader fileReader = new SpeechFileReader();
+		try (CorpusArchive archive = CorpusArchive.open(archivePath)) {
+			SpeechFileReader archiveReader = new SpeechFileReader(archive);
+			long fileNanos = 0;
+			long archiveNanos = 0;
+			int numMismatches = 0;
+			for (String label : archive.getLabels()) {
+				for (int sampleId : archive.getSampleIds(label)) {
+					long start = System.nanoTime();
+					SpeechSample fromFile;
+					SpeechSample fromArchive;
+					if (label.startsWith(CorpusArchive.getPhoneLabel(""))) {
+						String phoneme = label.substring(CorpusArchive.getPhoneLabel("").length());
+						fromFile = fileReader.readSpeechFileForPhone(phoneme);
+						fileNanos += System.nanoTime() - start;
+						start = System.nanoTime();
+						fromArchive = archiveReader.readSpeechFileForPhone(phoneme);
+					} else {
+						String word = label.substring(CorpusArchive.getWordLabel("").length());
+						fromFile = fileReader.readSpeechFileForTrainingData(word, sampleId);
+						fileNanos += System.nanoTime() - start;
+						start = System.nanoTime();
+						fromArchive = archiveReader.readSpeechFileForTrainingData(word, sampleId);
+					}
+					archiveNanos += System.nanoTime() - start;
+					if (!Arrays.equals(fromFile.data, fromArchive.data)) {
+						numMismatches++;
+					}
+				}
+			}
+			System.out.println(String.format("%d mismatches, read from files in %.1fms and from the archive in %.1fms",
+					numMismatches, fileNanos/1e6, archiveNanos/1e6));
+		}
+	}
+	
+}
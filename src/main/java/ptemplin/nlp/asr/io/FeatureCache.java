@@ -0,0 +1,146 @@
+package ptemplin.nlp.asr.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+
+/**
+ * Persists computed features on disk, keyed by a hash of the content of the audio file and of
+ * the configuration of the analysis which produced them. Changing either the audio or the
+ * configuration therefore changes the key, so stale entries are never read. Each entry is a
+ * small binary file which is memory-mapped when read.
+ */
+public class FeatureCache {
+	
+	private static final int MAGIC = 0x46454154; // "FEAT"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4*Integer.BYTES;
+	private static final String ENTRY_FILE_EXTENSION = ".feat";
+	
+	private static final int HASH_READ_BUFFER_SIZE = 1 << 16;
+	// bytes of each hash used in the key
+	private static final int AUDIO_KEY_BYTES = 16;
+	private static final int CONFIGURATION_KEY_BYTES = 8;
+	
+	private final Path cacheDir;
+	private final String configurationKey;
+	
+	/**
+	 * @param cacheDir the directory holding the cache entries
+	 * @param configuration describing everything that affects the cached features
+	 */
+	public FeatureCache(String cacheDir, String configuration) {
+		this.cacheDir = Paths.get(cacheDir);
+		MessageDigest digest = newDigest();
+		this.configurationKey = toHex(digest.digest(configuration.getBytes(StandardCharsets.UTF_8)), CONFIGURATION_KEY_BYTES);
+	}
+	
+	/**
+	 * Computes the key of the features of the given audio file, by hashing its content.
+	 *
+	 * @param audioFilePath of the audio file
+	 * @return the key of the cache entry for the audio file
+	 * @throws IOException if the audio file could not be read
+	 */
+	public String getKey(String audioFilePath) throws IOException {
+		MessageDigest digest = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_READ_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(Paths.get(audioFilePath), StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return toHex(digest.digest(), AUDIO_KEY_BYTES) + "_" + configurationKey;
+	}
+	
+	/**
+	 * Loads the features cached under the key.
+	 *
+	 * @param key of the cache entry
+	 * @return the cached features, or null if there are none
+	 * @throws IOException if the cache entry exists but could not be read
+	 */
+	public FeatureMatrix load(String key) throws IOException {
+		try (FileChannel channel = FileChannel.open(getEntryPath(key), StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.size() < HEADER_SIZE || mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+				return null;
+			}
+			int numFrames = mapped.getInt();
+			int dimension = mapped.getInt();
+			if (channel.size() != HEADER_SIZE + (long) numFrames*dimension*Double.BYTES) {
+				return null;
+			}
+			FeatureMatrix features = new FeatureMatrix(numFrames, dimension);
+			mapped.asDoubleBuffer().get(features.getData(), 0, numFrames*dimension);
+			return features;
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores the features under the key. The entry is written to a temporary file which is
+	 * then renamed, so a concurrent or interrupted store never leaves a partial entry.
+	 *
+	 * @param key of the cache entry
+	 * @param features to cache
+	 * @throws IOException if the cache entry could not be written
+	 */
+	public void store(String key, FeatureMatrix features) throws IOException {
+		Files.createDirectories(cacheDir);
+		int numValues = features.getNumFrames()*features.getDimension();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + numValues*Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(features.getNumFrames()).putInt(features.getDimension());
+		buffer.asDoubleBuffer().put(features.getData(), 0, numValues);
+		buffer.rewind();
+		Path tempFile = Files.createTempFile(cacheDir, key, ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(tempFile, getEntryPath(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	private Path getEntryPath(String key) {
+		return cacheDir.resolve(key + ENTRY_FILE_EXTENSION);
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+	
+	private static String toHex(byte[] bytes, int length) {
+		StringBuilder hex = new StringBuilder(2*length);
+		for (int i = 0; i < length; i++) {
+			hex.append(String.format("%02x", bytes[i]));
+		}
+		return hex.toString();
+	}
+	
+}
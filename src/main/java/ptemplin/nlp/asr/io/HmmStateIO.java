@@ -2,22 +2,90 @@ package ptemplin.nlp.asr.io;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import ptemplin.nlp.asr.acoustic.ContinuousHMM;
 
+/**
+ * Saves models as text matrices for inspection, and saves and loads them in a compact binary
+ * format. A binary model file is, in little-endian order,
+ *
+ * <pre>
+ * int magic, version, numStates, observationSize, numArcs, reserved
+ * numArcs x (int from, int to)
+ * numArcs x (double transitionProb, double[observationSize] mean, double[observationSize] variance)
+ * long CRC32 of everything before it
+ * </pre>
+ *
+ * holding only the arcs of the linear topology, and only the diagonal of each variance, since
+ * nothing else of a {@link ContinuousHMM} is ever populated.
+ */
 public class HmmStateIO {
 	
 	public static final String OUTPUT_DIR = "tmp/";
+	public static final String BINARY_MODEL_FILE_EXTENSION = ".hmm";
+	
+	private static final int MAGIC = 0x424d4d48; // "HMMB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 6*Integer.BYTES;
+	private static final int CHECKSUM_SIZE = Long.BYTES;
 
 	public static void saveFullHMMState(String modelName, ContinuousHMM model) {
 		saveHmmTransitionProbs(modelName, model);
 		saveHmmOutputParameters(modelName, model);
 	}
 	
+	/**
+	 * Saves the model as text matrices as {@link #saveFullHMMState} does, but stops at and
+	 * throws the first failure rather than printing it.
+	 *
+	 * @throws IOException if any of the matrices could not be written
+	 */
+	static void writeFullHMMState(String modelName, ContinuousHMM model) throws IOException {
+		writeHmmTransitionProbs(modelName, model);
+		writeHmmOutputMeans(modelName, model);
+		writeHmmOutputVariances(modelName, model);
+	}
+	
 	public static void saveHmmTransitionProbs(String modelName, ContinuousHMM model) {
-		String fileName = OUTPUT_DIR + modelName + "_TP.mat";
-		try (PrintWriter writer = new PrintWriter(fileName)){
-			double[][] transitionProbs = model.getTransitionProbs();
+		try {
+			writeHmmTransitionProbs(modelName, model);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+	
+	public static void saveHmmOutputParameters(String modelName, ContinuousHMM model) {
+		try {
+			writeHmmOutputMeans(modelName, model);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+		try {
+			writeHmmOutputVariances(modelName, model);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+	
+	private static void writeHmmTransitionProbs(String modelName, ContinuousHMM model) throws IOException {
+		Path file = Paths.get(OUTPUT_DIR + modelName + "_TP.mat");
+		double[][] transitionProbs = model.getTransitionProbs();
+		writeTextAtomically(file, writer -> {
 			for (int i = 0; i < transitionProbs.length; i++) {
 				for (int j = 0; j < transitionProbs[0].length; j++) {
 					if (j != 0) {
@@ -27,16 +95,13 @@ public class HmmStateIO {
 				}
 				writer.println();
 			}
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		}
+		});
 	}
 	
-	public static void saveHmmOutputParameters(String modelName, ContinuousHMM model) {
-		String meanFileName = OUTPUT_DIR + modelName + "_MEAN.mat";
-		String varFileName = OUTPUT_DIR + modelName + "_VAR.mat";
-		try (PrintWriter writer = new PrintWriter(meanFileName)){
-			double[][][] outputMeans = model.getOutputMeans();
+	private static void writeHmmOutputMeans(String modelName, ContinuousHMM model) throws IOException {
+		Path meanFile = Paths.get(OUTPUT_DIR + modelName + "_MEAN.mat");
+		double[][][] outputMeans = model.getOutputMeans();
+		writeTextAtomically(meanFile, writer -> {
 			for (int i = 0; i < outputMeans.length; i++) {
 				for (int j = 0; j < outputMeans[0].length; j++) {
 					for (int k = 0; k < outputMeans[0][0].length; k++) {
@@ -48,11 +113,13 @@ public class HmmStateIO {
 					writer.println();
 				}
 			}
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		}
-		try (PrintWriter writer = new PrintWriter(varFileName)){
-			double[][][][] outputVars = model.getOutputVariances();
+		});
+	}
+	
+	private static void writeHmmOutputVariances(String modelName, ContinuousHMM model) throws IOException {
+		Path varFile = Paths.get(OUTPUT_DIR + modelName + "_VAR.mat");
+		double[][][][] outputVars = model.getOutputVariances();
+		writeTextAtomically(varFile, writer -> {
 			for (int i = 0; i < outputVars.length; i++) {
 				for (int j = 0; j < outputVars[0].length; j++) {
 					for (int k = 0; k < outputVars[0][0].length; k++) {
@@ -64,9 +131,179 @@ public class HmmStateIO {
 					writer.println();
 				}
 			}
-		} catch (IOException ex) {
-			ex.printStackTrace();
+		});
+	}
+	
+	// writes to a temporary file which is then renamed, so a crash never leaves a partial file
+	private static void writeTextAtomically(Path file, Consumer<PrintWriter> contents) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tempFile = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tempFile))) {
+				contents.accept(writer);
+				if (writer.checkError()) {
+					throw new IOException("Failed to write " + file);
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * Saves the model in the binary format as OUTPUT_DIR/modelName.hmm.
+	 */
+	public static void saveBinaryHMMState(String modelName, ContinuousHMM model) throws IOException {
+		saveBinaryHMMState(Paths.get(OUTPUT_DIR, modelName + BINARY_MODEL_FILE_EXTENSION), model);
+	}
+	
+	/**
+	 * Saves the model in the binary format. The file is written to a temporary file which is
+	 * then renamed, so an interrupted save never leaves a partial model.
+	 *
+	 * @param file to save the model to
+	 * @param model to save
+	 * @throws IOException if the model could not be written
+	 */
+	public static void saveBinaryHMMState(Path file, ContinuousHMM model) throws IOException {
+		final double[][] transitionProbs = model.getTransitionProbs();
+		final double[][][] outputMeans = model.getOutputMeans();
+		final double[][][][] outputVars = model.getOutputVariances();
+		final int numStates = transitionProbs.length;
+		final int observationSize = outputMeans[0][0].length;
+		final int numArcs = countArcs(numStates);
+		ByteBuffer buffer = ByteBuffer.allocate(getFileSize(numArcs, observationSize)).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(numStates).putInt(observationSize).putInt(numArcs).putInt(0);
+		for (int i = 0; i < numStates; i++) {
+			for (int j = i; j <= i + 1 && j < numStates; j++) {
+				buffer.putInt(i).putInt(j);
+			}
+		}
+		for (int i = 0; i < numStates; i++) {
+			for (int j = i; j <= i + 1 && j < numStates; j++) {
+				buffer.putDouble(transitionProbs[i][j]);
+				for (int k = 0; k < observationSize; k++) {
+					buffer.putDouble(outputMeans[i][j][k]);
+				}
+				for (int k = 0; k < observationSize; k++) {
+					buffer.putDouble(outputVars[i][j][k][k]);
+				}
+			}
 		}
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.array(), 0, buffer.position());
+		buffer.putLong(checksum.getValue());
+		buffer.rewind();
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tempFile = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+	
+	/**
+	 * Loads the model saved as OUTPUT_DIR/modelName.hmm.
+	 */
+	public static ContinuousHMM loadBinaryHMMState(String modelName) throws IOException {
+		return loadBinaryHMMState(Paths.get(OUTPUT_DIR, modelName + BINARY_MODEL_FILE_EXTENSION));
+	}
+	
+	/**
+	 * Loads a model saved in the binary format by memory-mapping it.
+	 *
+	 * @param file holding the model
+	 * @return the model
+	 * @throws IOException if the file could not be read, or is not a valid model of the shape
+	 *         of a {@link ContinuousHMM}
+	 */
+	public static ContinuousHMM loadBinaryHMMState(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE + CHECKSUM_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Not a binary model: " + file);
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (mapped.getInt(0) != MAGIC) {
+				throw new IOException("Not a binary model: " + file);
+			}
+			if (mapped.getInt(4) != VERSION) {
+				throw new IOException("Unsupported binary model version " + mapped.getInt(4) + ": " + file);
+			}
+			final int checksumOffset = (int) channel.size() - CHECKSUM_SIZE;
+			CRC32 checksum = new CRC32();
+			checksum.update(mapped.duplicate().position(0).limit(checksumOffset));
+			if (checksum.getValue() != mapped.getLong(checksumOffset)) {
+				throw new IOException("Checksum mismatch in binary model: " + file);
+			}
+			ContinuousHMM model = new ContinuousHMM();
+			final double[][] transitionProbs = model.getTransitionProbs();
+			final double[][][] outputMeans = model.getOutputMeans();
+			final double[][][][] outputVars = model.getOutputVariances();
+			final int numStates = mapped.getInt(8);
+			final int observationSize = mapped.getInt(12);
+			final int numArcs = mapped.getInt(16);
+			if (numStates != transitionProbs.length || observationSize != outputMeans[0][0].length
+					|| numArcs != countArcs(numStates) || checksumOffset + CHECKSUM_SIZE != getFileSize(numArcs, observationSize)) {
+				throw new IOException("Binary model of " + numStates + " states, " + observationSize
+						+ " dimensions and " + numArcs + " arcs does not fit the model: " + file);
+			}
+			final int arcsOffset = HEADER_SIZE;
+			DoubleBuffer parameters = mapped.position(arcsOffset + 2*numArcs*Integer.BYTES).slice()
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			for (int a = 0; a < numArcs; a++) {
+				int i = mapped.getInt(arcsOffset + 2*a*Integer.BYTES);
+				int j = mapped.getInt(arcsOffset + (2*a + 1)*Integer.BYTES);
+				if (i < 0 || i >= numStates || j < i || j > i + 1 || j >= numStates) {
+					throw new IOException("Binary model has an arc from " + i + " to " + j + " outside the topology: " + file);
+				}
+				transitionProbs[i][j] = parameters.get();
+				parameters.get(outputMeans[i][j], 0, observationSize);
+				for (int k = 0; k < observationSize; k++) {
+					outputVars[i][j][k][k] = parameters.get();
+				}
+			}
+			// the densities the model scores with are rebuilt from the parameters read into it
+			model.outputParametersChanged();
+			return model;
+		}
+	}
+	
+	/**
+	 * Loads every binary model in the directory.
+	 *
+	 * @param dir holding the models
+	 * @return the models, by file name without the extension
+	 * @throws IOException if any model could not be loaded
+	 */
+	public static Map<String, ContinuousHMM> loadAllBinaryHMMStates(String dir) throws IOException {
+		Map<String, ContinuousHMM> models = new TreeMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(dir), "*" + BINARY_MODEL_FILE_EXTENSION)) {
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				String modelName = fileName.substring(0, fileName.length() - BINARY_MODEL_FILE_EXTENSION.length());
+				models.put(modelName, loadBinaryHMMState(file));
+			}
+		}
+		return models;
+	}
+	
+	private static int countArcs(int numStates) {
+		// a self-loop from every state, and an arc onward from all but the last
+		return 2*numStates - 1;
+	}
+	
+	private static int getFileSize(int numArcs, int observationSize) {
+		return HEADER_SIZE + numArcs*(2*Integer.BYTES + (1 + 2*observationSize)*Double.BYTES) + CHECKSUM_SIZE;
 	}
 	
 }
@@ -0,0 +1,197 @@
+package ptemplin.nlp.asr.io;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ptemplin.nlp.asr.acoustic.ContinuousHMM;
+
+/**
+ * Saves checkpoints of a model on a background thread, so that training only pauses long
+ * enough to copy the parameters. Checkpoints are written in the order they were requested. A
+ * checkpoint requested while another of the same name is still waiting replaces it, so
+ * back-to-back checkpoints of one model coalesce into the latest rather than queueing up behind
+ * a slow disk, while checkpoints under distinct names are all written. Snapshots are reused
+ * once written, so only as many exist as checkpoints have been waiting at once. Every file
+ * is written to a temporary file and renamed into place, so a crash never leaves a partially
+ * written model.
+ */
+public class ModelCheckpointer implements AutoCloseable {
+	
+	private final boolean saveText;
+	private final Thread writerThread;
+	private final Object lock = new Object();
+	
+	// guarded by lock
+	private final ArrayDeque<ContinuousHMM> spareSnapshots = new ArrayDeque<>();
+	// by model name, in the order they were first requested
+	private final Map<String, ContinuousHMM> pendingSnapshots = new LinkedHashMap<>();
+	private boolean writing = false;
+	private boolean closed = false;
+	private IOException failure = null;
+	private int numRequested = 0;
+	private int numCoalesced = 0;
+	private int numWritten = 0;
+	private long writeNanos = 0;
+	
+	public ModelCheckpointer() {
+		this(false);
+	}
+	
+	/**
+	 * @param saveText whether to save each checkpoint as text matrices, as
+	 *        {@link HmmStateIO#saveFullHMMState(String, ContinuousHMM)} does, as well as in the
+	 *        binary format
+	 */
+	public ModelCheckpointer(boolean saveText) {
+		this.saveText = saveText;
+		this.writerThread = new Thread(this::writeCheckpoints, "model-checkpointer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	/**
+	 * Snapshots the model to be saved under the given name, replacing any checkpoint of the same
+	 * name which has not started being written yet.
+	 *
+	 * @param modelName to save the model as, see {@link HmmStateIO#saveBinaryHMMState(String, ContinuousHMM)}
+	 * @param model to save
+	 */
+	public void checkpoint(String modelName, ContinuousHMM model) {
+		synchronized (lock) {
+			if (closed) {
+				throw new IllegalStateException("Checkpointer is closed");
+			}
+			ContinuousHMM snapshot = pendingSnapshots.get(modelName);
+			if (snapshot != null) {
+				numCoalesced++;
+			} else {
+				snapshot = spareSnapshots.isEmpty() ? new ContinuousHMM() : spareSnapshots.pop();
+				pendingSnapshots.put(modelName, snapshot);
+			}
+			model.copyParametersTo(snapshot);
+			numRequested++;
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Waits until every checkpoint requested so far has been written or coalesced.
+	 *
+	 * @throws IOException if any checkpoint could not be written
+	 */
+	public void flush() throws IOException, InterruptedException {
+		synchronized (lock) {
+			while (!pendingSnapshots.isEmpty() || writing) {
+				lock.wait();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+	
+	private void writeCheckpoints() {
+		while (true) {
+			ContinuousHMM snapshot;
+			String modelName;
+			synchronized (lock) {
+				while (pendingSnapshots.isEmpty() && !closed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+				if (pendingSnapshots.isEmpty()) {
+					return;
+				}
+				Iterator<Map.Entry<String, ContinuousHMM>> first = pendingSnapshots.entrySet().iterator();
+				Map.Entry<String, ContinuousHMM> next = first.next();
+				first.remove();
+				modelName = next.getKey();
+				snapshot = next.getValue();
+				writing = true;
+			}
+			long startTime = System.nanoTime();
+			IOException writeFailure = null;
+			try {
+				HmmStateIO.saveBinaryHMMState(modelName, snapshot);
+				if (saveText) {
+					HmmStateIO.writeFullHMMState(modelName, snapshot);
+				}
+			} catch (IOException ex) {
+				writeFailure = ex;
+			} catch (RuntimeException ex) {
+				// recorded rather than left to kill the writer, which would leave flush waiting forever
+				writeFailure = new IOException("Could not write checkpoint " + modelName, ex);
+			}
+			synchronized (lock) {
+				spareSnapshots.push(snapshot);
+				writing = false;
+				writeNanos += System.nanoTime() - startTime;
+				if (writeFailure != null) {
+					failure = writeFailure;
+				} else {
+					numWritten++;
+				}
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the checkpoints still waiting, and stops the writer.
+	 *
+	 * @throws IOException if any checkpoint could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			writerThread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing checkpoints", ex);
+		}
+		synchronized (lock) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+	
+	/** @return the number of checkpoints requested */
+	public int getNumRequested() {
+		synchronized (lock) {
+			return numRequested;
+		}
+	}
+	
+	/** @return the number of checkpoints replaced by a later one of the same name before being written */
+	public int getNumCoalesced() {
+		synchronized (lock) {
+			return numCoalesced;
+		}
+	}
+	
+	/** @return the number of checkpoints written */
+	public int getNumWritten() {
+		synchronized (lock) {
+			return numWritten;
+		}
+	}
+	
+	/** @return the total time spent writing checkpoints in the background */
+	public long getWriteNanos() {
+		synchronized (lock) {
+			return writeNanos;
+		}
+	}
+	
+}
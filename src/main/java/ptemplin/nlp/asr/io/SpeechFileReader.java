@@ -1,14 +1,14 @@
 package ptemplin.nlp.asr.io;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ShortBuffer;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import ptemplin.nlp.asr.application.Constants;
+import ptemplin.nlp.asr.frontend.PolyphaseResampler;
+
+import static ptemplin.nlp.asr.application.Constants.ANALYSIS_SAMPLE_RATE;
 import static ptemplin.nlp.asr.application.Constants.PHONEME_SPEECH_SAMPLE_DIR;
 import static ptemplin.nlp.asr.application.Constants.WORD_SPEECH_SAMPLE_DIR;
 
@@ -16,62 +16,94 @@ public class SpeechFileReader {
 
 	private static final String PHONEME_RECORDING_FILEPATH_SUFFIX = "_recording.wav";
 	private static final String SPEECH_DATA_FILE_EXTENSION = ".wav";
-
-	private static final int INPUT_STREAM_BUFFER_SIZE = 128000;
 	
+	// the archive to read training data and phones from, or null to read them from their files
+	private final CorpusArchive archive;
+	
+	public SpeechFileReader() {
+		this(null);
+	}
+	
+	/**
+	 * Creates a reader of the training data and phone recordings packed in the archive, which
+	 * are identical to those read from the corpus files.
+	 */
+	public SpeechFileReader(CorpusArchive archive) {
+		this.archive = archive;
+	}
+
 	public SpeechSample readSpeechFileForTrainingData(String dir, int dataNum)
 			throws UnsupportedAudioFileException, IOException {
-		String fileName = WORD_SPEECH_SAMPLE_DIR + dir + "/" + dataNum + SPEECH_DATA_FILE_EXTENSION;
-		return readSpeechFile(fileName);
+		if (archive != null) {
+			return toSpeechSample(archive.getRecording(CorpusArchive.getWordLabel(dir), dataNum));
+		}
+		return readSpeechFile(getTrainingDataFilePath(dir, dataNum));
 	}
 
 	public SpeechSample readSpeechFileForPhone(String phoneme) throws UnsupportedAudioFileException, IOException {
-		String fileName = PHONEME_SPEECH_SAMPLE_DIR + phoneme.toString() + PHONEME_RECORDING_FILEPATH_SUFFIX;
-		return readSpeechFile(fileName);
+		if (archive != null) {
+			return toSpeechSample(archive.getRecording(CorpusArchive.getPhoneLabel(phoneme), CorpusArchive.PHONE_SAMPLE_ID));
+		}
+		return readSpeechFile(getPhoneFilePath(phoneme));
+	}
+	
+	public static String getTrainingDataFilePath(String dir, int dataNum) {
+		return WORD_SPEECH_SAMPLE_DIR + dir + "/" + dataNum + SPEECH_DATA_FILE_EXTENSION;
+	}
+	
+	public static String getPhoneFilePath(String phoneme) {
+		return PHONEME_SPEECH_SAMPLE_DIR + phoneme + PHONEME_RECORDING_FILEPATH_SUFFIX;
 	}
 	
+	/**
+	 * Reads the left channel of the file, resampled to {@link Constants#ANALYSIS_SAMPLE_RATE},
+	 * as 16-bit little-endian samples.
+	 */
 	public SpeechSample readSpeechFile(String filePath) throws IOException, UnsupportedAudioFileException {
-		File soundFile = new File(filePath);
-		AudioInputStream audioStream = AudioSystem.getAudioInputStream(soundFile);
-		AudioFormat format = audioStream.getFormat();
-		// read the contents of the stream buffer by buffer
-		int nBytesRead = 0;
-		byte[] abData = new byte[INPUT_STREAM_BUFFER_SIZE];
-		ArrayList<Byte> fullSample = new ArrayList<>();
-		while (nBytesRead != -1) {
-			nBytesRead = audioStream.read(abData, 0, abData.length);
-			if (nBytesRead >= 0) {
-				for (int i = 0; i < nBytesRead; i++) {
-					fullSample.add(abData[i]);
-				}
-			}
-		}
-		byte[] fullSampleArr = new byte[fullSample.size()];
-		for (int i = 0; i < fullSample.size(); i++) {
-			fullSampleArr[i] = fullSample.get(i);
-		}
-		SpeechSample sample = new SpeechSample(fullSampleArr, format);
-		isolateLeftChannel(sample);
-		decreaseSampleRate(sample);
-		return sample;
+		return toSpeechSample(WavFile.open(filePath));
 	}
 	
-	private static void isolateLeftChannel(SpeechSample sample) {
-		byte[] leftChannel = new byte[sample.data.length/2];
-		for (int i = 0; i < sample.data.length/2; i+=2) {
-			leftChannel[i] = sample.data[i*2];
-			leftChannel[i+1] = sample.data[i*2 + 1];
+	private static SpeechSample toSpeechSample(WavFile wavFile) {
+		int[] samples = readAnalysisSamples(wavFile);
+		byte[] data = new byte[Short.BYTES*samples.length];
+		for (int i = 0; i < samples.length; i++) {
+			data[2*i] = (byte) samples[i];
+			data[2*i+1] = (byte) (samples[i] >> 8);
 		}
-		sample.data = leftChannel;
+		return new SpeechSample(data, wavFile.getFormat());
 	}
 	
-	private static void decreaseSampleRate(SpeechSample sample) {
-		byte[] reducedSampleData = new byte[sample.data.length/4];
-		for (int i = 0; i < sample.data.length/4; i+=2) {
-			reducedSampleData[i] = sample.data[i*4];
-			reducedSampleData[i+1] = sample.data[i*4+1];
+	/**
+	 * Reads the samples of the file as {@link #readSpeechFile(String)} does, without building
+	 * a {@link SpeechSample}.
+	 *
+	 * @return the samples, as {@link SpeechSample#getDataAsInts()} would return them
+	 */
+	public int[] readSpeechSamples(String filePath) throws IOException, UnsupportedAudioFileException {
+		return readAnalysisSamples(WavFile.open(filePath));
+	}
+	
+	/**
+	 * @return a description of how samples are read, for keying anything derived from them
+	 */
+	public static String getConfiguration() {
+		return "SpeechFileReader channel=0 sampleRate=" + ANALYSIS_SAMPLE_RATE
+				+ " clamp=[" + Short.MIN_VALUE + "," + Short.MAX_VALUE + "] " + PolyphaseResampler.getConfiguration();
+	}
+	
+	private static int[] readAnalysisSamples(WavFile wavFile) {
+		ShortBuffer samples = wavFile.getSamples();
+		final int numChannels = wavFile.getNumChannels();
+		int[] leftChannel = new int[wavFile.getNumFrames()];
+		for (int i = 0; i < leftChannel.length; i++) {
+			leftChannel[i] = samples.get(i*numChannels);
+		}
+		int[] resampled = PolyphaseResampler.resample(leftChannel, wavFile.getSampleRate(), ANALYSIS_SAMPLE_RATE);
+		// filtering can overshoot the range of the recording
+		for (int i = 0; i < resampled.length; i++) {
+			resampled[i] = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, resampled[i]));
 		}
-		sample.data = reducedSampleData;
+		return resampled;
 	}
 	
 }
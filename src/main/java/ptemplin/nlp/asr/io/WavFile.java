@@ -0,0 +1,145 @@
+package ptemplin.nlp.asr.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A 16-bit PCM WAV file, memory-mapped and parsed in place. The samples are exposed as a view
+ * of the mapped file, so reading them involves no copies beyond the page cache.
+ */
+public class WavFile {
+	
+	private static final int RIFF_ID = 0x46464952; // "RIFF"
+	private static final int WAVE_ID = 0x45564157; // "WAVE"
+	private static final int FMT_ID = 0x20746d66; // "fmt "
+	private static final int DATA_ID = 0x61746164; // "data"
+	private static final int RIFF_HEADER_SIZE = 12;
+	private static final int CHUNK_HEADER_SIZE = 8;
+	private static final int MIN_FMT_SIZE = 16;
+	
+	private static final int FORMAT_PCM = 1;
+	private static final int FORMAT_EXTENSIBLE = 0xfffe;
+	// offset of the sub-format GUID, whose first two bytes are the format code, in an extensible fmt chunk
+	private static final int EXTENSIBLE_SUB_FORMAT_OFFSET = 24;
+	private static final int SUPPORTED_BITS_PER_SAMPLE = 16;
+	
+	private final int sampleRate;
+	private final int numChannels;
+	private final ShortBuffer samples;
+	
+	private WavFile(int sampleRate, int numChannels, ShortBuffer samples) {
+		this.sampleRate = sampleRate;
+		this.numChannels = numChannels;
+		this.samples = samples;
+	}
+	
+	/**
+	 * Wraps interleaved 16-bit samples stored without a RIFF header, such as in a
+	 * {@link CorpusArchive}.
+	 */
+	static WavFile wrap(int sampleRate, int numChannels, ShortBuffer samples) {
+		return new WavFile(sampleRate, numChannels, samples);
+	}
+	
+	/**
+	 * Maps the file and parses its RIFF header, skipping any chunks other than the format and
+	 * data chunks.
+	 *
+	 * @param filePath of the WAV file
+	 * @return the parsed file
+	 * @throws IOException if the file could not be read
+	 * @throws UnsupportedAudioFileException if the file is not a 16-bit PCM WAV file
+	 */
+	public static WavFile open(String filePath) throws IOException, UnsupportedAudioFileException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < RIFF_HEADER_SIZE || buffer.getInt(0) != RIFF_ID || buffer.getInt(8) != WAVE_ID) {
+			throw new UnsupportedAudioFileException("Not a RIFF WAVE file: " + filePath);
+		}
+		int sampleRate = -1;
+		int numChannels = -1;
+		int position = RIFF_HEADER_SIZE;
+		while (position + CHUNK_HEADER_SIZE <= buffer.limit()) {
+			int chunkId = buffer.getInt(position);
+			long chunkSize = buffer.getInt(position + 4) & 0xffffffffL;
+			int chunkStart = position + CHUNK_HEADER_SIZE;
+			if (chunkId == FMT_ID) {
+				if (chunkSize < MIN_FMT_SIZE || chunkStart + chunkSize > buffer.limit()) {
+					throw new UnsupportedAudioFileException("Truncated format chunk: " + filePath);
+				}
+				int formatCode = buffer.getShort(chunkStart) & 0xffff;
+				if (formatCode == FORMAT_EXTENSIBLE && chunkSize >= EXTENSIBLE_SUB_FORMAT_OFFSET + 2) {
+					formatCode = buffer.getShort(chunkStart + EXTENSIBLE_SUB_FORMAT_OFFSET) & 0xffff;
+				}
+				int bitsPerSample = buffer.getShort(chunkStart + 14) & 0xffff;
+				if (formatCode != FORMAT_PCM || bitsPerSample != SUPPORTED_BITS_PER_SAMPLE) {
+					throw new UnsupportedAudioFileException("Only 16-bit PCM is supported, but got format "
+							+ formatCode + " with " + bitsPerSample + " bits: " + filePath);
+				}
+				numChannels = buffer.getShort(chunkStart + 2) & 0xffff;
+				sampleRate = buffer.getInt(chunkStart + 4);
+			} else if (chunkId == DATA_ID) {
+				if (numChannels <= 0) {
+					throw new UnsupportedAudioFileException("Data chunk before format chunk: " + filePath);
+				}
+				// tolerate a data size running past the end of a truncated file
+				int dataSize = (int) Math.min(chunkSize, buffer.limit() - chunkStart);
+				int frameSize = numChannels*Short.BYTES;
+				dataSize -= dataSize % frameSize;
+				buffer.position(chunkStart).limit(chunkStart + dataSize);
+				ShortBuffer samples = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+				return new WavFile(sampleRate, numChannels, samples);
+			}
+			// chunks are padded to an even length
+			long nextPosition = chunkStart + chunkSize + (chunkSize & 1);
+			if (nextPosition > buffer.limit()) {
+				break;
+			}
+			position = (int) nextPosition;
+		}
+		throw new UnsupportedAudioFileException("No data chunk: " + filePath);
+	}
+	
+	/**
+	 * @return a read-only view of the interleaved samples, starting at the first sample
+	 */
+	public ShortBuffer getSamples() {
+		return samples.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * @return the sample of the channel in the frame
+	 */
+	public short getSample(int frame, int channel) {
+		return samples.get(frame*numChannels + channel);
+	}
+	
+	public int getNumFrames() {
+		return samples.limit()/numChannels;
+	}
+	
+	public int getSampleRate() {
+		return sampleRate;
+	}
+	
+	public int getNumChannels() {
+		return numChannels;
+	}
+	
+	public AudioFormat getFormat() {
+		return new AudioFormat(sampleRate, SUPPORTED_BITS_PER_SAMPLE, numChannels, true, false);
+	}
+	
+}
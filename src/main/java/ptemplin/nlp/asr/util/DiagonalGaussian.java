@@ -0,0 +1,125 @@
+package ptemplin.nlp.asr.util;
+
+import java.util.Arrays;
+
+/**
+ * A Gaussian with diagonal covariance evaluated in the natural log domain. The inverse
+ * variances and the log of the normalizing constant are computed when the parameters are set,
+ * so evaluating the density is a single loop with no allocation, and densities far below the
+ * range of a double are still distinguished.
+ * <p>
+ * Each component is normalized by 2*pi*variance, as in
+ * {@link Gaussian#multiGaussian(double[], double[][], double[], int)}, so that scores are
+ * interchangeable with it wherever its result does not underflow. Variances are floored so
+ * that a component which has collapsed onto a single value cannot dominate the density.
+ */
+public class DiagonalGaussian {
+	
+	public static final double DEFAULT_VARIANCE_FLOOR = 1e-3;
+	
+	private final double varianceFloor;
+	private final double[] means;
+	// 1/(2*variance) of each component
+	private final double[] halfInverseVariances;
+	private double logNormalizer;
+	private int numFlooredVariances;
+	
+	public DiagonalGaussian(int dimension) {
+		this(dimension, DEFAULT_VARIANCE_FLOOR);
+	}
+	
+	/**
+	 * Creates a Gaussian of zero mean and unit variance.
+	 *
+	 * @param dimension of the observations
+	 * @param varianceFloor the smallest variance of any component
+	 */
+	public DiagonalGaussian(int dimension, double varianceFloor) {
+		if (!(varianceFloor > 0)) {
+			throw new IllegalArgumentException("Variance floor must be positive: " + varianceFloor);
+		}
+		this.varianceFloor = varianceFloor;
+		this.means = new double[dimension];
+		this.halfInverseVariances = new double[dimension];
+		double[] unitVariances = new double[dimension];
+		Arrays.fill(unitVariances, 1);
+		setParameters(means, unitVariances);
+	}
+	
+	/**
+	 * Sets the means and the variances of each component, flooring the variances.
+	 */
+	public void setParameters(double[] means, double[] variances) {
+		checkDimension(means.length);
+		checkDimension(variances.length);
+		double logNormalizer = 0;
+		int numFloored = 0;
+		for (int i = 0; i < this.means.length; i++) {
+			double variance = variances[i];
+			// also catches variances which are NaN from re-estimating over no frames
+			if (!(variance >= varianceFloor)) {
+				variance = varianceFloor;
+				numFloored++;
+			}
+			this.means[i] = means[i];
+			halfInverseVariances[i] = 0.5/variance;
+			logNormalizer -= Math.log(2*Math.PI*variance);
+		}
+		this.logNormalizer = logNormalizer;
+		this.numFlooredVariances = numFloored;
+	}
+	
+	/**
+	 * Sets the means and the diagonal of the covariance matrix, ignoring the rest of it.
+	 */
+	public void setParameters(double[] means, double[][] covariance) {
+		checkDimension(covariance.length);
+		double[] variances = new double[covariance.length];
+		for (int i = 0; i < variances.length; i++) {
+			variances[i] = covariance[i][i];
+		}
+		setParameters(means, variances);
+	}
+	
+	/**
+	 * Evaluates the natural log of the density at the observation stored in obs from the given
+	 * offset onwards.
+	 */
+	public double logDensity(double[] obs, int obsOffset) {
+		double sum = 0;
+		for (int i = 0; i < means.length; i++) {
+			double diff = obs[obsOffset + i] - means[i];
+			sum += diff*diff*halfInverseVariances[i];
+		}
+		return logNormalizer - sum;
+	}
+	
+	public int getDimension() {
+		return means.length;
+	}
+	
+	/**
+	 * @return the natural log of the density at the mean
+	 */
+	public double getLogNormalizer() {
+		return logNormalizer;
+	}
+	
+	/**
+	 * @return the number of components whose variance was raised to the floor
+	 */
+	public int getNumFlooredVariances() {
+		return numFlooredVariances;
+	}
+	
+	public double getVarianceFloor() {
+		return varianceFloor;
+	}
+	
+	private void checkDimension(int length) {
+		if (length != means.length) {
+			throw new IllegalArgumentException("Expected " + means.length + " components but got " + length);
+		}
+	}
+	
+}
@@ -0,0 +1,91 @@
+package ptemplin.nlp.asr.util;
+
+import java.util.Arrays;
+
+/**
+ * Approximates logarithms from the bits of a double: the exponent gives the integer part of
+ * the base 2 logarithm, and the top bits of the mantissa index a table of log2(1 + i/1024),
+ * between whose entries the rest of the mantissa interpolates linearly.
+ *
+ * For positive normal arguments the absolute error is at most {@link #MAX_LOG2_ERROR} in base
+ * 2, which is the interpolation error h^2/(8 ln 2) for table spacing h = 1/1024, and so at
+ * most {@link #MAX_LN_ERROR} in base e and {@link #MAX_LOG10_ERROR} in base 10. The relative
+ * error is unbounded only near x = 1, where the logarithm itself is near zero. Zero, negative,
+ * subnormal, infinite and NaN arguments fall back to {@link Math#log(double)}, so the special
+ * values are exactly those of Math.
+ */
+public final class FastLog {
+	
+	public static final double MAX_LOG2_ERROR = 1.75e-7;
+	public static final double MAX_LN_ERROR = MAX_LOG2_ERROR*0.6931471805599453;
+	public static final double MAX_LOG10_ERROR = MAX_LOG2_ERROR*0.3010299956639812;
+	
+	private static final int TABLE_BITS = 10;
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+	private static final int MANTISSA_BITS = 52;
+	private static final long MANTISSA_MASK = (1L << MANTISSA_BITS) - 1;
+	// the mantissa bits below those indexing the table
+	private static final int FRACTION_BITS = MANTISSA_BITS - TABLE_BITS;
+	private static final long FRACTION_MASK = (1L << FRACTION_BITS) - 1;
+	private static final double FRACTION_SCALE = 1.0/(1L << FRACTION_BITS);
+	private static final int EXPONENT_BIAS = 1023;
+	private static final int SPECIAL_EXPONENT = 0x7ff;
+	
+	private static final double LN_2 = Math.log(2);
+	private static final double LOG10_2 = Math.log10(2);
+	
+	// interleaved log2(1 + i/TABLE_SIZE) and the slope to the next entry
+	private static final double[] TABLE = generateTable();
+	
+	private FastLog() {}
+	
+	/**
+	 * @return a description of the approximation, including a hash of its table, for keying
+	 *         anything computed with it
+	 */
+	public static String getConfiguration() {
+		return "FastLog tableBits=" + TABLE_BITS + String.format(" table=%08x", Arrays.hashCode(TABLE));
+	}
+	
+	/**
+	 * @return the approximate base 2 logarithm of x
+	 */
+	public static double log2(double x) {
+		long bits = Double.doubleToRawLongBits(x);
+		// includes the sign bit, so negative values are also special
+		int exponent = (int) (bits >>> MANTISSA_BITS);
+		if (exponent == 0 || exponent >= SPECIAL_EXPONENT) {
+			return Math.log(x)/LN_2;
+		}
+		int index = (int) ((bits & MANTISSA_MASK) >>> FRACTION_BITS) << 1;
+		double fraction = (bits & FRACTION_MASK)*FRACTION_SCALE;
+		return (exponent - EXPONENT_BIAS) + (TABLE[index] + fraction*TABLE[index + 1]);
+	}
+	
+	/**
+	 * @return the approximate natural logarithm of x
+	 */
+	public static double ln(double x) {
+		return log2(x)*LN_2;
+	}
+	
+	/**
+	 * @return the approximate base 10 logarithm of x
+	 */
+	public static double log10(double x) {
+		return log2(x)*LOG10_2;
+	}
+	
+	private static double[] generateTable() {
+		double[] table = new double[2*TABLE_SIZE];
+		double log2 = 0;
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			double nextLog2 = Math.log1p((i + 1)/(double) TABLE_SIZE)/LN_2;
+			table[2*i] = log2;
+			table[2*i + 1] = nextLog2 - log2;
+			log2 = nextLog2;
+		}
+		return table;
+	}
+	
+}
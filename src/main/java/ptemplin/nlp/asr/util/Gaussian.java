@@ -14,9 +14,16 @@ public class Gaussian {
 	private static final BigDecimal MIN_COMPONENT = new BigDecimal("1E-50");
 
 	public static BigDecimal multiGaussian(double[] mean, double[][] variance, double[] obs) {
+		return multiGaussian(mean, variance, obs, 0);
+	}
+	
+	/**
+	 * Evaluates the Gaussian at the observation stored in obs from the given offset onwards.
+	 */
+	public static BigDecimal multiGaussian(double[] mean, double[][] variance, double[] obs, int obsOffset) {
 		BigDecimal prob = new BigDecimal("1");
 		for (int i = 0; i < mean.length; i++) {
-			double meanDiff = mean[i] - obs[i];
+			double meanDiff = mean[i] - obs[obsOffset + i];
 			double exponent = -Math.pow(meanDiff, 2)/(2*variance[i][i]);
 			double divisor = 2*variance[i][i]*Math.PI;
 			if (divisor < 1E-50) {
@@ -29,7 +36,7 @@ public class Gaussian {
 					System.out.println("Exponent: " + exponent);
 					System.out.println("Divisor: " + divisor);
 					System.out.println("Mean: " + mean[i]);
-					System.out.println("Obs: " + obs[i]);
+					System.out.println("Obs: " + obs[obsOffset + i]);
 					System.out.println("Variance: " + variance[i][i]);
 					System.out.println("i: " + i);
 					prob = prob.multiply(MIN_COMPONENT);
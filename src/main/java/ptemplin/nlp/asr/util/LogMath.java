@@ -15,11 +15,13 @@ public final class LogMath {
     private static LogMath instance;
     private static double logBase = 1.0001d;
     private static boolean useTable = true;
+    private static boolean useFastLog = false;
 
     private double naturalLogBase;
     private double inverseNaturalLogBase;
 
     private double theAddTable[];
+    private boolean fastLog;
 
     private LogMath() {
         naturalLogBase = Math.log(logBase);
@@ -81,6 +83,8 @@ public final class LogMath {
                 theAddTable[index] = linearToLog(innerSummation);
             }
         }
+        // only enabled now, so the add table is always built with the exact logarithm
+        fastLog = useFastLog;
     }
 
     public static LogMath getLogMath() {
@@ -121,6 +125,18 @@ public final class LogMath {
         }
     }
 
+    /**
+     * Sets whether linearToLog uses {@link FastLog}, whose error in the log domain is at most
+     * {@link FastLog#MAX_LN_ERROR} divided by the natural log of the log base.
+     * @param useFastLog to configure the approximate logarithm
+     */
+    public static void setUseFastLog(boolean useFastLog) {
+        synchronized(LogMath.class) {
+            assert instance == null;
+            LogMath.useFastLog = useFastLog;
+        }
+    }
+
     /**
      * Returns the summation of two numbers when the arguments and the result are in log. <p>  That is, it returns
      * log(a + b) given log(a) and log(b) </p> <p>  This method makes use of the equality: </p> <p>  <b>log(a
@@ -291,7 +307,7 @@ public final class LogMath {
      */
     public final double linearToLog(double linearValue)
             throws IllegalArgumentException {
-        return Math.log(linearValue) * inverseNaturalLogBase;
+        return (fastLog ? FastLog.ln(linearValue) : Math.log(linearValue)) * inverseNaturalLogBase;
     }
 
     /**
@@ -314,6 +330,10 @@ public final class LogMath {
         return useTable;
     }
 
+    public boolean isUseFastLog() {
+        return fastLog;
+    }
+
     /**
      * Returns the log (base 10) of value
      *
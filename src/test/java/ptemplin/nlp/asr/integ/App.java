@@ -1,23 +1,29 @@
 package ptemplin.nlp.asr.integ;
 
-import java.util.List;
-
 import ptemplin.nlp.asr.acoustic.ContinuousHMM;
 import ptemplin.nlp.asr.acoustic.HiddenMarkovModel;
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
 import ptemplin.nlp.asr.frontend.SpectralAnalyzer;
 import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
 import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.FeatureCache;
 import ptemplin.nlp.asr.io.HmmStateIO;
+import ptemplin.nlp.asr.io.ModelCheckpointer;
 import ptemplin.nlp.asr.io.SpeechFileReader;
-import ptemplin.nlp.asr.io.SpeechSample;
+
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
 
 public class App {
 	
 	private static final SpectralAnalyzer analyzer = new LincolnFrontend();
 	private static final SpeechFileReader reader = new SpeechFileReader();
+	private static final FeatureCache featureCache = new FeatureCache(FEATURE_CACHE_DIR,
+			BatchFeatureExtractor.getCacheConfiguration(analyzer));
 	
 	private static final String[] vocabulary = {"one", "two", "three"};
 	private static final int NUM_TRAINING_SAMPLES = 10;
+	private static final int TRAINING_QUEUE_DEPTH = 3;
 
 	public static void main(String[] args) throws Exception {
 		initHMMAndMultiTrain();
@@ -29,9 +35,7 @@ public class App {
 		HiddenMarkovModel acousticModel = new ContinuousHMM();
 
 		System.out.println("Extracting features from test data");
-		SpeechSample sample = reader.readSpeechFileForTrainingData("one", 5);
-		int[] trimmedSpeech = SilenceProcessor.trimSilence(sample.getDataAsInts());
-		List<int[]> observationSeq = analyzer.computeFeatureVectors(trimmedSpeech);
+		FeatureMatrix observationSeq = extractFeatures("one", 5);
 		
 		System.out.println("Testing data against default model");
 		double likelihood = acousticModel.evaluateObservation(observationSeq);
@@ -51,9 +55,7 @@ public class App {
 		HiddenMarkovModel acousticModel = new ContinuousHMM();
 
 		System.out.println("Extracting features from test data");
-		SpeechSample sample = reader.readSpeechFileForTrainingData("one", 7);
-		int[] trimmedSpeech = SilenceProcessor.trimSilence(sample.getDataAsInts());
-		List<int[]> observationSeq = analyzer.computeFeatureVectors(trimmedSpeech);
+		FeatureMatrix observationSeq = extractFeatures("one", 7);
 		//printObservationVector(observationSeq);
 
 		System.out.println("Testing data against default model");
@@ -77,12 +79,22 @@ public class App {
 		HmmStateIO.saveFullHMMState("Default", (ContinuousHMM) acousticModel);
 
 		System.out.println("Training on single word...");
-		for (int i = 1; i <= 10; i++) {
-			SpeechSample sample = reader.readSpeechFileForTrainingData(trainingWord, i);
-			int[] trimmedSpeech = SilenceProcessor.trimSilence(sample.getDataAsInts());
-			List<int[]> observationSeq = analyzer.computeFeatureVectors(trimmedSpeech);
-			acousticModel.train(observationSeq);
-			HmmStateIO.saveFullHMMState(i + "xTrained", (ContinuousHMM) acousticModel);
+		try (BatchFeatureExtractor extractor = new BatchFeatureExtractor(TRAINING_QUEUE_DEPTH,
+				() -> new LincolnFrontend(true), FEATURE_CACHE_DIR);
+				BatchFeatureExtractor.Prefetcher trainingData =
+						extractor.prefetchTrainingData(trainingWord, 1, 10, TRAINING_QUEUE_DEPTH);
+				ModelCheckpointer checkpointer = new ModelCheckpointer(true)) {
+			for (int i = 1; trainingData.hasNext(); i++) {
+				FeatureMatrix observationSeq = trainingData.next();
+				acousticModel.train(observationSeq);
+				checkpointer.checkpoint(i + "xTrained", (ContinuousHMM) acousticModel);
+			}
+			checkpointer.checkpoint(trainingWord, (ContinuousHMM) acousticModel);
+			checkpointer.flush();
+			System.out.format("Loader stalled %d times for %.1f ms%n",
+					trainingData.getNumStalls(), trainingData.getStallNanos() / 1e6);
+			System.out.format("Wrote %d of %d checkpoints in %.1f ms%n", checkpointer.getNumWritten(),
+					checkpointer.getNumRequested(), checkpointer.getWriteNanos() / 1e6);
 		}
 		
 		System.out.println("Testing all vocabulary words against model...");
@@ -91,9 +103,7 @@ public class App {
 				System.out.println("Training word (should be high)");
 			} else { System.out.println("Non-trained word (should be low)"); }
 			for (int i = 1; i <= 10; i++) {
-				SpeechSample sample = reader.readSpeechFileForTrainingData(word, i);
-				int[] trimmedSpeech = SilenceProcessor.trimSilence(sample.getDataAsInts());
-				List<int[]> observationSeq = analyzer.computeFeatureVectors(trimmedSpeech);
+				FeatureMatrix observationSeq = extractFeatures(word, i);
 				double likelihood = acousticModel.evaluateObservation(observationSeq);
 				System.out.println("Word: " + word + " Sample: " + i + " P(O|M) = " + likelihood);
 			}
@@ -105,18 +115,10 @@ public class App {
 		HiddenMarkovModel acousticModel = new ContinuousHMM();
 
 		System.out.println("Extracting features from test data");
-		SpeechSample sample1 = reader.readSpeechFileForTrainingData("one", 1);
-		int[] trimmedSpeech1 = SilenceProcessor.trimSilence(sample1.getDataAsInts());
-		List<int[]> observationSeq1 = analyzer.computeFeatureVectors(trimmedSpeech1);
-		SpeechSample sample2 = reader.readSpeechFileForTrainingData("one", 2);
-		int[] trimmedSpeech2 = SilenceProcessor.trimSilence(sample2.getDataAsInts());
-		List<int[]> observationSeq2 = analyzer.computeFeatureVectors(trimmedSpeech2);
-		SpeechSample sample3 = reader.readSpeechFileForTrainingData("one", 3);
-		int[] trimmedSpeech3 = SilenceProcessor.trimSilence(sample3.getDataAsInts());
-		List<int[]> observationSeq3 = analyzer.computeFeatureVectors(trimmedSpeech3);
-		SpeechSample sample4 = reader.readSpeechFileForTrainingData("two", 5);
-		int[] trimmedSpeech4 = SilenceProcessor.trimSilence(sample4.getDataAsInts());
-		List<int[]> observationSeq4 = analyzer.computeFeatureVectors(trimmedSpeech4);
+		FeatureMatrix observationSeq1 = extractFeatures("one", 1);
+		FeatureMatrix observationSeq2 = extractFeatures("one", 2);
+		FeatureMatrix observationSeq3 = extractFeatures("one", 3);
+		FeatureMatrix observationSeq4 = extractFeatures("two", 5);
 		
 
 		System.out.println("Testing data against default model");
@@ -175,9 +177,7 @@ public class App {
 		HiddenMarkovModel acousticModel = new ContinuousHMM();
 		
 		System.out.println("Extracting features from test data");
-		SpeechSample sample = reader.readSpeechFileForTrainingData("one", 1);
-		int[] trimmedSpeech = SilenceProcessor.trimSilence(sample.getDataAsInts());
-		List<int[]> observationSeq = analyzer.computeFeatureVectors(trimmedSpeech);
+		FeatureMatrix observationSeq = extractFeatures("one", 1);
 		
 		System.out.println("Testing data against default model");
 		double likelihood = acousticModel.evaluateObservation(observationSeq);
@@ -185,10 +185,23 @@ public class App {
 		System.out.println("P(O|M) = " + likelihood);
 	}
 	
-	private static void printObservationVector(List<int[]> observationSequence) {
-		for (int i = 0; i < observationSequence.get(0).length; i++) {
-			for (int j = 0; j < observationSequence.size(); j++) {
-				System.out.format("%-4d  ", observationSequence.get(j)[i]);
+	// Reads, trims and analyzes a training sample, unless its features are already cached
+	private static FeatureMatrix extractFeatures(String word, int sampleNum) throws Exception {
+		String filePath = SpeechFileReader.getTrainingDataFilePath(word, sampleNum);
+		String key = featureCache.getKey(filePath);
+		FeatureMatrix observationSeq = featureCache.load(key);
+		if (observationSeq == null) {
+			int[] trimmedSpeech = SilenceProcessor.trimSilence(reader.readSpeechSamples(filePath));
+			observationSeq = analyzer.computeFeatureMatrix(trimmedSpeech);
+			featureCache.store(key, observationSeq);
+		}
+		return observationSeq;
+	}
+	
+	private static void printObservationVector(FeatureMatrix observationSequence) {
+		for (int i = 0; i < observationSequence.getDimension(); i++) {
+			for (int j = 0; j < observationSequence.getNumFrames(); j++) {
+				System.out.format("%-4d  ", (int) observationSequence.get(j, i));
 			}
 			System.out.println();
 		}
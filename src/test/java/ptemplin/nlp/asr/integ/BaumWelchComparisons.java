@@ -0,0 +1,73 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.acoustic.BaumWelchTrainer;
+import ptemplin.nlp.asr.acoustic.ContinuousHMM;
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
+
+/**
+ * Trains a model on every sample of a word with {@link BaumWelchTrainer}, printing the corpus
+ * likelihood of each iteration, compares it with training on the samples one at a time, and
+ * checks that the trained model is identical with any number of workers.
+ */
+public class BaumWelchComparisons {
+
+    private static final String TRAINING_WORD = "one";
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int NUM_ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<FeatureMatrix> corpus;
+        try (BatchFeatureExtractor extractor = new BatchFeatureExtractor(
+                Runtime.getRuntime().availableProcessors(), () -> new LincolnFrontend(true), FEATURE_CACHE_DIR)) {
+            corpus = extractor.extractFeaturesForTrainingData(TRAINING_WORD, 1, NUM_TRAINING_SAMPLES).getFeatureVectors();
+        }
+
+        ContinuousHMM sequential = new ContinuousHMM();
+        for (FeatureMatrix observationSeq : corpus) {
+            sequential.train(observationSeq);
+        }
+        System.out.format("Sequential single-utterance training: corpus log likelihood %.2f%n", corpusLogLikelihood(sequential, corpus));
+
+        ContinuousHMM reference = null;
+        int maxParallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+            ContinuousHMM model = new ContinuousHMM();
+            try (BaumWelchTrainer trainer = new BaumWelchTrainer(parallelism)) {
+                List<BaumWelchTrainer.Iteration> iterations = trainer.train(model, corpus, NUM_ITERATIONS);
+                for (int i = 0; i < iterations.size(); i++) {
+                    BaumWelchTrainer.Iteration iteration = iterations.get(i);
+                    System.out.format("%d workers, iteration %d: log likelihood %.2f over %d utterances (%d skipped), %.0f frames/s%n",
+                            parallelism, i, iteration.getLogLikelihood(), iteration.getNumUtterances(),
+                            iteration.getNumSkippedUtterances(), iteration.getFramesPerSecond());
+                }
+            }
+            System.out.format("%d workers: corpus log likelihood %.2f after training%n", parallelism, corpusLogLikelihood(model, corpus));
+            if (reference == null) {
+                reference = model;
+            } else {
+                if (!Arrays.deepEquals(reference.getTransitionProbs(), model.getTransitionProbs())
+                        || !Arrays.deepEquals(reference.getOutputMeans(), model.getOutputMeans())
+                        || !Arrays.deepEquals(reference.getOutputVariances(), model.getOutputVariances())) {
+                    throw new AssertionError("Model trained with " + parallelism + " workers differs from 1 worker");
+                }
+                System.out.println(parallelism + " workers: identical to 1 worker");
+            }
+        }
+    }
+
+    private static double corpusLogLikelihood(ContinuousHMM model, List<FeatureMatrix> corpus) {
+        double logLikelihood = 0;
+        for (FeatureMatrix observationSeq : corpus) {
+            logLikelihood += model.evaluateLogObservation(observationSeq);
+        }
+        return logLikelihood;
+    }
+
+}
@@ -0,0 +1,74 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.acoustic.ContinuousHMM;
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.io.HmmStateIO;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
+
+/**
+ * Saves many copies of a trained model in the binary format to a temporary directory, times
+ * loading them all back, and checks that a loaded model has the saved parameters and scores a
+ * held-out utterance exactly as the saved one does.
+ */
+public class BinaryModelComparisons {
+
+    private static final int NUM_MODELS = 500;
+    private static final int NUM_MODEL_TRAINING_SAMPLES = 3;
+    private static final int NUM_PASSES = 3;
+
+    public static void main(String[] args) throws Exception {
+        List<FeatureMatrix> utterances;
+        try (BatchFeatureExtractor extractor = new BatchFeatureExtractor(1, () -> new LincolnFrontend(true), FEATURE_CACHE_DIR)) {
+            utterances = extractor.extractFeaturesForTrainingData("one", 1, NUM_MODEL_TRAINING_SAMPLES + 1).getFeatureVectors();
+        }
+        ContinuousHMM model = new ContinuousHMM();
+        for (FeatureMatrix utterance : utterances.subList(0, NUM_MODEL_TRAINING_SAMPLES)) {
+            model.train(utterance);
+        }
+        final FeatureMatrix heldOut = utterances.get(NUM_MODEL_TRAINING_SAMPLES);
+        final double savedScore = model.evaluateLogObservation(heldOut);
+
+        Path dir = Files.createTempDirectory("binarymodels");
+        try {
+            for (int m = 0; m < NUM_MODELS; m++) {
+                HmmStateIO.saveBinaryHMMState(dir.resolve("model" + m + HmmStateIO.BINARY_MODEL_FILE_EXTENSION), model);
+            }
+            for (int pass = 0; pass < NUM_PASSES; pass++) {
+                long start = System.nanoTime();
+                Map<String, ContinuousHMM> models = HmmStateIO.loadAllBinaryHMMStates(dir.toString());
+                long elapsed = System.nanoTime() - start;
+                if (models.size() != NUM_MODELS) {
+                    throw new AssertionError("Loaded " + models.size() + " of " + NUM_MODELS + " models");
+                }
+                ContinuousHMM loaded = models.get("model0");
+                if (!Arrays.deepEquals(loaded.getTransitionProbs(), model.getTransitionProbs())
+                        || !Arrays.deepEquals(loaded.getOutputMeans(), model.getOutputMeans())
+                        || !Arrays.deepEquals(loaded.getOutputVariances(), model.getOutputVariances())) {
+                    throw new AssertionError("Loaded model parameters differ from the saved ones");
+                }
+                double loadedScore = loaded.evaluateLogObservation(heldOut);
+                if (loadedScore != savedScore) {
+                    throw new AssertionError("Loaded model scores " + loadedScore + " where the saved one scores " + savedScore);
+                }
+                System.out.println(String.format("Loaded %d models in %.1fms, parameters identical, score %.2f identical",
+                        models.size(), elapsed/1e6, loadedScore));
+            }
+        } finally {
+            for (File file : dir.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.CepstralNormalizationStage;
+import ptemplin.nlp.asr.frontend.FeatureFrameListener;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.FeatureMatrixCollector;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+
+/**
+ * Checks {@link CepstralNormalizationStage} on the features of the training corpus: the
+ * utterance mode against {@link CepstralNormalizationStage#normalizeUtterance}, the last frame
+ * of a sliding window as long as the utterance against the same, and the statistics of the
+ * normalized utterances.
+ */
+public class CepstralNormalizationComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    // the utterance mode calls normalizeUtterance itself, so must match it exactly
+    private static final double UTTERANCE_TOLERANCE = 0;
+    // the sliding window keeps running sums, where normalizeUtterance makes two passes
+    private static final double WINDOW_TOLERANCE = 1e-6;
+    private static final double STATISTICS_TOLERANCE = 1e-9;
+
+    public static void main(String[] args) throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        LincolnFrontend frontend = new LincolnFrontend(true);
+        for (boolean normalizeVariance : new boolean[] {false, true}) {
+            double maxUtteranceError = 0;
+            double maxWindowError = 0;
+            double maxStatisticsError = 0;
+            for (String word : vocabulary) {
+                for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
+                    int[] sample = SilenceProcessor.trimSilence(reader.readSpeechFileForTrainingData(word, i).getDataAsInts());
+                    FeatureMatrix features = frontend.computeFeatureMatrix(sample);
+                    final int numFrames = features.getNumFrames();
+                    final int dimension = features.getDimension();
+
+                    FeatureMatrix expected = new FeatureMatrix(features.getData().clone(), numFrames, dimension);
+                    CepstralNormalizationStage.normalizeUtterance(expected, normalizeVariance);
+
+                    FeatureMatrixCollector utteranceCollector = new FeatureMatrixCollector(dimension);
+                    FeatureMatrixCollector windowCollector = new FeatureMatrixCollector(dimension);
+                    stream(features, CepstralNormalizationStage.createUtterance(dimension, normalizeVariance, utteranceCollector));
+                    stream(features, CepstralNormalizationStage.createSlidingWindow(dimension, numFrames, normalizeVariance,
+                            windowCollector));
+                    FeatureMatrix utterance = utteranceCollector.getFeatureMatrix();
+                    FeatureMatrix window = windowCollector.getFeatureMatrix();
+                    if (utterance.getNumFrames() != numFrames || window.getNumFrames() != numFrames) {
+                        throw new AssertionError("Expected " + numFrames + " frames but got " + utterance.getNumFrames()
+                                + " from the utterance mode and " + window.getNumFrames() + " from the sliding window");
+                    }
+
+                    for (int t = 0; t < numFrames; t++) {
+                        for (int c = 0; c < dimension; c++) {
+                            maxUtteranceError = Math.max(maxUtteranceError, Math.abs(utterance.get(t, c) - expected.get(t, c)));
+                        }
+                    }
+                    // only the last frame of the window has seen the whole utterance
+                    for (int c = 0; c < dimension; c++) {
+                        maxWindowError = Math.max(maxWindowError,
+                                Math.abs(window.get(numFrames - 1, c) - expected.get(numFrames - 1, c)));
+                    }
+                    maxStatisticsError = Math.max(maxStatisticsError, statisticsError(features, expected, normalizeVariance));
+                }
+            }
+            String name = normalizeVariance ? "mean and variance" : "mean";
+            check(name + ", utterance mode against normalizeUtterance", maxUtteranceError, UTTERANCE_TOLERANCE);
+            check(name + ", full sliding window against normalizeUtterance", maxWindowError, WINDOW_TOLERANCE);
+            check(name + ", statistics of the normalized utterances", maxStatisticsError, STATISTICS_TOLERANCE);
+        }
+    }
+
+    private static void stream(FeatureMatrix features, FeatureFrameListener stage) {
+        for (int t = 0; t < features.getNumFrames(); t++) {
+            stage.onFeatureFrame(features.getData(), features.getOffset(t));
+        }
+        stage.onEnd();
+    }
+
+    /**
+     * @return the largest deviation of a component of the normalized features from zero mean
+     *         and, if normalizing variance, from unit variance
+     */
+    private static double statisticsError(FeatureMatrix features, FeatureMatrix normalized, boolean normalizeVariance) {
+        final int numFrames = normalized.getNumFrames();
+        double maxError = 0;
+        for (int c = 0; c < normalized.getDimension(); c++) {
+            double sum = 0;
+            double sumSquares = 0;
+            boolean constant = true;
+            for (int t = 0; t < numFrames; t++) {
+                sum += normalized.get(t, c);
+                sumSquares += normalized.get(t, c)*normalized.get(t, c);
+                constant &= features.get(t, c) == features.get(0, c);
+            }
+            maxError = Math.max(maxError, Math.abs(sum/numFrames));
+            // components which never vary stay at zero rather than being scaled to unit variance
+            if (normalizeVariance && !constant) {
+                maxError = Math.max(maxError, Math.abs(sumSquares/numFrames - 1));
+            }
+        }
+        return maxError;
+    }
+
+    private static void check(String comparison, double maxError, double tolerance) {
+        boolean passed = maxError <= tolerance;
+        System.out.println(String.format("%s: max error %.3g, tolerance %.3g, %s",
+                comparison, maxError, tolerance, passed ? "PASS" : "FAIL"));
+        if (!passed) {
+            throw new AssertionError("Error " + maxError + " of " + comparison + " exceeds tolerance " + tolerance);
+        }
+    }
+
+}
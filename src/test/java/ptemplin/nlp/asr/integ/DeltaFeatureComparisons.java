@@ -0,0 +1,154 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.DeltaFeatureStage;
+import ptemplin.nlp.asr.frontend.FeatureFrameListener;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.FeatureMatrixCollector;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.frontend.lincoln.StreamingLincolnFrontend;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+
+import java.util.Arrays;
+
+/**
+ * Checks {@link DeltaFeatureStage} on the features of the training corpus: the batch deltas
+ * against the regression formula evaluated directly, the deltas of audio streamed in chunks
+ * through {@link StreamingLincolnFrontend} against the batch deltas, and the delay of every
+ * frame through the stage.
+ */
+public class DeltaFeatureComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int[] WINDOWS = {1, 2, 3};
+    private static final int[] CHUNK_SIZES = {1, 100, 517, 4096};
+    // the stage sums the regression in the same order as the reference
+    private static final double FORMULA_TOLERANCE = 0;
+
+    public static void main(String[] args) throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        LincolnFrontend frontend = new LincolnFrontend(true);
+        for (int window : WINDOWS) {
+            double maxFormulaError = 0;
+            int numStreamed = 0;
+            for (String word : vocabulary) {
+                for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
+                    int[] sample = SilenceProcessor.trimSilence(reader.readSpeechFileForTrainingData(word, i).getDataAsInts());
+                    FeatureMatrix features = frontend.computeFeatureMatrix(sample);
+                    FeatureMatrix batch = DeltaFeatureStage.computeDeltas(features, window);
+                    maxFormulaError = Math.max(maxFormulaError, maxError(computeDeltasDirectly(features, window), batch));
+
+                    for (int chunkSize : CHUNK_SIZES) {
+                        FeatureMatrix streamed = streamDeltas(sample, window, chunkSize);
+                        if (streamed.getNumFrames() != batch.getNumFrames()
+                                || !Arrays.equals(streamed.getData(), batch.getData())) {
+                            throw new AssertionError("Deltas of " + word + " #" + i + " streamed in chunks of "
+                                    + chunkSize + " differ from the batch deltas with window " + window);
+                        }
+                        numStreamed++;
+                    }
+                    checkDelay(features, window);
+                }
+            }
+            boolean passed = maxFormulaError <= FORMULA_TOLERANCE;
+            System.out.println(String.format("Window %d: batch against the formula max error %.3g, %s;"
+                            + " %d streamed utterances identical to batch; every frame delayed by %d frames",
+                    window, maxFormulaError, passed ? "PASS" : "FAIL", numStreamed, 2*window));
+            if (!passed) {
+                throw new AssertionError("Error " + maxFormulaError + " exceeds tolerance " + FORMULA_TOLERANCE);
+            }
+        }
+    }
+
+    private static FeatureMatrix streamDeltas(int[] sample, int window, int chunkSize) {
+        FeatureMatrixCollector collector = new FeatureMatrixCollector(3*LincolnFrontend.NUM_MFCC_COMPONENTS);
+        StreamingLincolnFrontend streamingFrontend = new StreamingLincolnFrontend(
+                new DeltaFeatureStage(LincolnFrontend.NUM_MFCC_COMPONENTS, window, collector));
+        for (int start = 0; start < sample.length; start += chunkSize) {
+            streamingFrontend.process(sample, start, Math.min(chunkSize, sample.length - start));
+        }
+        streamingFrontend.end();
+        return collector.getFeatureMatrix();
+    }
+
+    /**
+     * Checks that frame t is passed on exactly when frame t + 2N arrives, and the last 2N frames
+     * at the end of the stream.
+     */
+    private static void checkDelay(FeatureMatrix features, int window) {
+        final int numFrames = features.getNumFrames();
+        int[] numOutput = new int[1];
+        DeltaFeatureStage stage = new DeltaFeatureStage(features.getDimension(), window, new FeatureFrameListener() {
+            @Override
+            public void onFeatureFrame(double[] data, int offset) {
+                numOutput[0]++;
+            }
+
+            @Override
+            public void onEnd() {
+                // counted by the caller
+            }
+        });
+        for (int t = 0; t < numFrames; t++) {
+            stage.onFeatureFrame(features.getData(), features.getOffset(t));
+            int expected = Math.max(0, t + 1 - 2*window);
+            if (numOutput[0] != expected) {
+                throw new AssertionError("After " + (t + 1) + " frames expected " + expected + " output but got " + numOutput[0]);
+            }
+        }
+        stage.onEnd();
+        if (numOutput[0] != numFrames) {
+            throw new AssertionError("Expected " + numFrames + " frames at the end but got " + numOutput[0]);
+        }
+    }
+
+    /**
+     * Evaluates the regressions of the stage's documentation over the whole matrix at once,
+     * with frames beyond either end replaced by the first or last frame.
+     */
+    private static FeatureMatrix computeDeltasDirectly(FeatureMatrix features, int window) {
+        final int numFrames = features.getNumFrames();
+        final int dimension = features.getDimension();
+        final double normalizer = window*(window + 1)*(2*window + 1)/3.0;
+        double[][] deltas = new double[numFrames][dimension];
+        for (int t = 0; t < numFrames; t++) {
+            for (int c = 0; c < dimension; c++) {
+                double sum = 0;
+                for (int n = 1; n <= window; n++) {
+                    sum += n*(features.get(clamp(t + n, numFrames), c) - features.get(clamp(t - n, numFrames), c));
+                }
+                deltas[t][c] = sum / normalizer;
+            }
+        }
+        FeatureMatrix result = new FeatureMatrix(numFrames, 3*dimension);
+        for (int t = 0; t < numFrames; t++) {
+            for (int c = 0; c < dimension; c++) {
+                double sum = 0;
+                for (int n = 1; n <= window; n++) {
+                    sum += n*(deltas[clamp(t + n, numFrames)][c] - deltas[clamp(t - n, numFrames)][c]);
+                }
+                result.set(t, c, features.get(t, c));
+                result.set(t, dimension + c, deltas[t][c]);
+                result.set(t, 2*dimension + c, sum / normalizer);
+            }
+        }
+        return result;
+    }
+
+    private static int clamp(int frame, int numFrames) {
+        return Math.max(0, Math.min(frame, numFrames - 1));
+    }
+
+    private static double maxError(FeatureMatrix expected, FeatureMatrix actual) {
+        if (expected.getNumFrames() != actual.getNumFrames()) {
+            throw new AssertionError("Expected " + expected.getNumFrames() + " frames but got " + actual.getNumFrames());
+        }
+        double maxError = 0;
+        for (int k = 0; k < expected.getData().length; k++) {
+            maxError = Math.max(maxError, Math.abs(expected.getData()[k] - actual.getData()[k]));
+        }
+        return maxError;
+    }
+
+}
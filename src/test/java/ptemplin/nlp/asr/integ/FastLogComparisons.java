@@ -0,0 +1,117 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.CommonsMathPowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.ScalarFrontendKernels;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+import ptemplin.nlp.asr.util.FastLog;
+
+import java.util.Random;
+
+/**
+ * Checks the error of {@link FastLog} against its documented bound, times it against
+ * {@link Math#log10(double)}, and compares the features computed with each.
+ */
+public class FastLogComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int NUM_FILTERS = 33;
+    private static final int NUM_TRIALS = 10000000;
+    private static final int BENCHMARK_LENGTH = 4096;
+    private static final int BENCHMARK_REPETITIONS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        checkErrorBound();
+        benchmark();
+        compareFeatures();
+    }
+
+    private static void checkErrorBound() {
+        Random random = new Random(0);
+        double maxError = 0;
+        for (int trial = 0; trial < NUM_TRIALS; trial++) {
+            // log-uniform over most of the normal range
+            double x = Math.pow(2, (random.nextDouble() - 0.5)*2000);
+            maxError = Math.max(maxError, Math.abs(FastLog.log2(x) - Math.log(x)/Math.log(2)));
+        }
+        // and densely over the table for one exponent
+        for (int i = 0; i < NUM_TRIALS; i++) {
+            double x = 1 + i/(double) NUM_TRIALS;
+            maxError = Math.max(maxError, Math.abs(FastLog.log2(x) - Math.log(x)/Math.log(2)));
+        }
+        System.out.println(String.format("log2: max error %.4g, bound %.4g", maxError, FastLog.MAX_LOG2_ERROR));
+        if (maxError > FastLog.MAX_LOG2_ERROR) {
+            throw new AssertionError("Error " + maxError + " exceeds bound " + FastLog.MAX_LOG2_ERROR);
+        }
+        if (FastLog.log2(1) != 0 || FastLog.log2(0) != Double.NEGATIVE_INFINITY || !Double.isNaN(FastLog.log2(-1))
+                || FastLog.log2(Double.POSITIVE_INFINITY) != Double.POSITIVE_INFINITY || !Double.isNaN(FastLog.log2(Double.NaN))) {
+            throw new AssertionError("Special values differ from Math.log");
+        }
+    }
+
+    private static void benchmark() {
+        Random random = new Random(0);
+        double[] values = new double[BENCHMARK_LENGTH];
+        for (int i = 0; i < values.length; i++) { values[i] = Math.exp(random.nextDouble()*50); }
+        double sum = 0;
+        // the first pass warms up both
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < BENCHMARK_REPETITIONS; r++) {
+                for (double value : values) { sum += Math.log10(value); }
+            }
+            long exactNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < BENCHMARK_REPETITIONS; r++) {
+                for (double value : values) { sum += FastLog.log10(value); }
+            }
+            long fastNanos = System.nanoTime() - start;
+            double numLogs = (double) BENCHMARK_LENGTH*BENCHMARK_REPETITIONS;
+            System.out.println(String.format("Math.log10 %.2fns, FastLog.log10 %.2fns, speedup %.2fx (%g)",
+                    exactNanos/numLogs, fastNanos/numLogs, exactNanos/(double) fastNanos, sum));
+        }
+    }
+
+    private static void compareFeatures() throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        LincolnFrontend exactFrontend = new LincolnFrontend(
+                new CommonsMathPowerSpectrumTransformer(), new ScalarFrontendKernels(), NUM_FILTERS, false);
+        LincolnFrontend fastFrontend = new LincolnFrontend(
+                new CommonsMathPowerSpectrumTransformer(), new ScalarFrontendKernels(), NUM_FILTERS, true);
+        // each log power moves by at most 10*MAX_LOG10_ERROR dB, and each cepstrum sums NUM_FILTERS of them
+        final double cepstrumBound = NUM_FILTERS*10*FastLog.MAX_LOG10_ERROR;
+        int numCepstra = 0;
+        double maxCepstrumError = 0;
+        int numFeatures = 0;
+        int numDifferent = 0;
+        for (String word : vocabulary) {
+            for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
+                int[] sample = SilenceProcessor.trimSilence(reader.readSpeechFileForTrainingData(word, i).getDataAsInts());
+                double[] exactCepstra = exactFrontend.computeCepstra(sample).getData();
+                double[] fastCepstra = fastFrontend.computeCepstra(sample).getData();
+                for (int k = 0; k < exactCepstra.length; k++) {
+                    maxCepstrumError = Math.max(maxCepstrumError, Math.abs(exactCepstra[k] - fastCepstra[k]));
+                    numCepstra++;
+                }
+                double[] exactFeatures = exactFrontend.computeFeatureMatrix(sample).getData();
+                double[] fastFeatures = fastFrontend.computeFeatureMatrix(sample).getData();
+                for (int k = 0; k < exactFeatures.length; k++) {
+                    if (exactFeatures[k] != fastFeatures[k]) { numDifferent++; }
+                    numFeatures++;
+                }
+            }
+        }
+        System.out.println(String.format("Cepstra: %d compared, max error %.3g, bound %.3g", numCepstra, maxCepstrumError, cepstrumBound));
+        if (maxCepstrumError > cepstrumBound) {
+            throw new AssertionError("Cepstrum error " + maxCepstrumError + " exceeds bound " + cepstrumBound);
+        }
+        System.out.println(String.format("Features: %d/%d differ", numDifferent, numFeatures));
+        // the corpus has no cepstrum within the bound of an integer, so truncation hides the error
+        if (numDifferent != 0) {
+            throw new AssertionError(numDifferent + " features differ with the fast logarithm");
+        }
+    }
+}
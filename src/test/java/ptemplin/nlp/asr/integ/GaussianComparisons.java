@@ -0,0 +1,144 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.util.DiagonalGaussian;
+import ptemplin.nlp.asr.util.Gaussian;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
+
+/**
+ * Checks {@link DiagonalGaussian} against {@link Gaussian#multiGaussian(double[], double[][], double[], int)}
+ * wherever the latter neither clamps a component nor underflows, on random parameters and on
+ * the features of the training data against the default model's distribution, and times both.
+ */
+public class GaussianComparisons {
+
+    private static final int OBSERVATION_SIZE = 12;
+    private static final double[] DEFAULT_MEANS = {-20, 70, 30, 43, 26, 10, 12, 0, 4, 0, 15, 0};
+    private static final double[] DEFAULT_VARIANCES = {1800, 850, 500, 450, 350, 300, 300, 250, 250, 215, 180, 150};
+    private static final int NUM_TRIALS = 100000;
+    // the smallest component and density which multiGaussian represents without clamping
+    private static final double MIN_COMPONENT = 1e-50;
+    private static final double MIN_DOUBLE_DENSITY = 1e-300;
+    private static final double MAX_RELATIVE_ERROR = 1e-9;
+
+    public static void main(String[] args) throws Exception {
+        compareRandom();
+        compareFeatures();
+    }
+
+    private static void compareRandom() {
+        Random random = new Random(0);
+        double[] means = new double[OBSERVATION_SIZE];
+        double[] variances = new double[OBSERVATION_SIZE];
+        double[] obs = new double[OBSERVATION_SIZE];
+        DiagonalGaussian gaussian = new DiagonalGaussian(OBSERVATION_SIZE);
+        int numCompared = 0;
+        double maxError = 0;
+        for (int trial = 0; trial < NUM_TRIALS; trial++) {
+            for (int i = 0; i < OBSERVATION_SIZE; i++) {
+                means[i] = (random.nextDouble() - 0.5)*200;
+                variances[i] = Math.pow(10, random.nextDouble()*4 - 1);
+                obs[i] = means[i] + random.nextGaussian()*Math.sqrt(variances[i])*2;
+            }
+            gaussian.setParameters(means, variances);
+            double[][] covariance = toCovariance(variances);
+            if (isRepresentable(means, covariance, obs, 0)) {
+                double expected = lnOf(Gaussian.multiGaussian(means, covariance, obs, 0));
+                maxError = Math.max(maxError, Math.abs(gaussian.logDensity(obs, 0) - expected)/Math.abs(expected));
+                numCompared++;
+            }
+        }
+        check(String.format("Random: compared %d of %d", numCompared, NUM_TRIALS), maxError);
+    }
+
+    private static void compareFeatures() throws Exception {
+        List<FeatureMatrix> featureVectors;
+        try (BatchFeatureExtractor extractor = new BatchFeatureExtractor(
+                Runtime.getRuntime().availableProcessors(), () -> new LincolnFrontend(true), FEATURE_CACHE_DIR)) {
+            featureVectors = extractor.extractFeaturesForTrainingData("one", 1, 10).getFeatureVectors();
+        }
+        double[][] covariance = toCovariance(DEFAULT_VARIANCES);
+        DiagonalGaussian gaussian = new DiagonalGaussian(OBSERVATION_SIZE);
+        gaussian.setParameters(DEFAULT_MEANS, covariance);
+
+        int numFrames = 0;
+        int numCompared = 0;
+        double maxError = 0;
+        for (FeatureMatrix features : featureVectors) {
+            for (int t = 0; t < features.getNumFrames(); t++) {
+                int offset = features.getOffset(t);
+                numFrames++;
+                if (isRepresentable(DEFAULT_MEANS, covariance, features.getData(), offset)) {
+                    double expected = lnOf(Gaussian.multiGaussian(DEFAULT_MEANS, covariance, features.getData(), offset));
+                    double actual = gaussian.logDensity(features.getData(), offset);
+                    maxError = Math.max(maxError, Math.abs(actual - expected)/Math.abs(expected));
+                    numCompared++;
+                }
+            }
+        }
+        check(String.format("Features: compared %d of %d frames", numCompared, numFrames), maxError);
+
+        for (int pass = 0; pass < 3; pass++) {
+            long startTime = System.nanoTime();
+            double sink = 0;
+            for (FeatureMatrix features : featureVectors) {
+                for (int t = 0; t < features.getNumFrames(); t++) {
+                    sink += Gaussian.multiGaussian(DEFAULT_MEANS, covariance, features.getData(), features.getOffset(t)).doubleValue();
+                }
+            }
+            long bigDecimalNanos = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (FeatureMatrix features : featureVectors) {
+                for (int t = 0; t < features.getNumFrames(); t++) {
+                    sink += gaussian.logDensity(features.getData(), features.getOffset(t));
+                }
+            }
+            long logDomainNanos = System.nanoTime() - startTime;
+            System.out.format("Pass %d: multiGaussian %.1f ns/frame, DiagonalGaussian %.1f ns/frame (%s)%n", pass,
+                    bigDecimalNanos/(double) numFrames, logDomainNanos/(double) numFrames, sink);
+        }
+    }
+
+    // whether multiGaussian neither clamps any component nor underflows a double
+    private static boolean isRepresentable(double[] means, double[][] covariance, double[] obs, int offset) {
+        double logProduct = 0;
+        for (int i = 0; i < means.length; i++) {
+            double diff = means[i] - obs[offset + i];
+            double component = Math.exp(-diff*diff/(2*covariance[i][i]))/(2*covariance[i][i]*Math.PI);
+            if (component < MIN_COMPONENT) {
+                return false;
+            }
+            logProduct += Math.log(component);
+        }
+        return logProduct > Math.log(MIN_DOUBLE_DENSITY);
+    }
+
+    private static double lnOf(BigDecimal value) {
+        return Math.log(value.doubleValue());
+    }
+
+    private static double[][] toCovariance(double[] variances) {
+        double[][] covariance = new double[variances.length][variances.length];
+        for (int i = 0; i < variances.length; i++) {
+            covariance[i][i] = variances[i];
+        }
+        return covariance;
+    }
+
+    private static void check(String comparison, double maxError) {
+        boolean passed = maxError <= MAX_RELATIVE_ERROR;
+        System.out.println(String.format("%s, max relative error %.3g, tolerance %.3g, %s",
+                comparison, maxError, MAX_RELATIVE_ERROR, passed ? "PASS" : "FAIL"));
+        if (!passed) {
+            throw new AssertionError("Relative error " + maxError + " exceeds tolerance " + MAX_RELATIVE_ERROR);
+        }
+    }
+
+}
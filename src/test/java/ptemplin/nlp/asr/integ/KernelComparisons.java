@@ -0,0 +1,162 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.FrontendKernels;
+import ptemplin.nlp.asr.frontend.KernelPowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.ScalarFrontendKernels;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+
+import java.util.Random;
+
+/**
+ * Compares the fastest available frontend kernels against the scalar kernels, on random data
+ * and on the features of the training corpus, and the features of a frontend built on them
+ * against those of the default frontend. Run with --add-modules jdk.incubator.vector to
+ * exercise the SIMD kernels.
+ */
+public class KernelComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int NUM_TRIALS = 1000;
+    private static final int NUM_FEATURE_PASSES = 5;
+    private static final double TOLERANCE = 1e-12;
+    // features are truncated to integers, so rounding can only move a feature across one boundary
+    private static final double MAX_FEATURE_DIFFERENCE = 1;
+
+    public static void main(String[] args) throws Exception {
+        FrontendKernels scalar = new ScalarFrontendKernels();
+        FrontendKernels fastest = ScalarFrontendKernels.createFastest();
+        System.out.println("Comparing " + fastest.getClass().getSimpleName() + " to " + scalar.getClass().getSimpleName());
+        compareKernels(scalar, fastest);
+        // later passes are timed with both frontends compiled
+        for (int pass = 0; pass < NUM_FEATURE_PASSES; pass++) {
+            compareFeatures(scalar, fastest);
+        }
+    }
+
+    private static void compareKernels(FrontendKernels expected, FrontendKernels actual) {
+        Random random = new Random(0);
+        double maxError = 0;
+        for (int trial = 0; trial < NUM_TRIALS; trial++) {
+            // odd lengths and offsets exercise the scalar tails of the vector loops
+            int length = 1 + random.nextInt(300);
+            int offset = random.nextInt(8);
+            int[] samples = new int[length + offset];
+            for (int i = 0; i < samples.length; i++) { samples[i] = random.nextInt(65536) - 32768; }
+            double[] a = randomArray(random, length + offset);
+            double[] b = randomArray(random, length);
+
+            double[] expectedOut = new double[length + offset];
+            double[] actualOut = new double[length + offset];
+            expected.window(samples, offset, b, expectedOut, offset, length);
+            actual.window(samples, offset, b, actualOut, offset, length);
+            maxError = Math.max(maxError, maxRelativeError(expectedOut, actualOut));
+
+            expectedOut = a.clone();
+            actualOut = a.clone();
+            expected.multiply(expectedOut, b, length);
+            actual.multiply(actualOut, b, length);
+            maxError = Math.max(maxError, maxRelativeError(expectedOut, actualOut));
+
+            expected.squaredMagnitude(a, b, expectedOut, length);
+            actual.squaredMagnitude(a, b, actualOut, length);
+            maxError = Math.max(maxError, maxRelativeError(expectedOut, actualOut));
+
+            // all terms positive so that the relative error of the sum is well conditioned
+            double[] positive = new double[length + offset];
+            for (int i = 0; i < positive.length; i++) { positive[i] = Math.abs(a[i]); }
+            double expectedDot = expected.dot(positive, offset, b, 0, length);
+            double actualDot = actual.dot(positive, offset, b, 0, length);
+            maxError = Math.max(maxError, relativeError(Math.abs(expectedDot), Math.abs(expectedDot - actualDot)));
+        }
+        System.out.println(String.format("Kernels: max relative error %.3g over %d trials", maxError, NUM_TRIALS));
+        if (maxError > TOLERANCE) {
+            throw new AssertionError("Kernel error " + maxError + " exceeds tolerance " + TOLERANCE);
+        }
+    }
+
+    private static void compareFeatures(FrontendKernels expected, FrontendKernels actual) throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        // the default frontend, with the commons-math power spectrum and inline scalar arithmetic
+        LincolnFrontend defaultFrontend = new LincolnFrontend();
+        LincolnFrontend expectedFrontend = new LincolnFrontend(new KernelPowerSpectrumTransformer(expected), expected);
+        LincolnFrontend actualFrontend = new LincolnFrontend(new KernelPowerSpectrumTransformer(actual), actual);
+        FeatureDifference kernelDifference = new FeatureDifference();
+        FeatureDifference defaultDifference = new FeatureDifference();
+        long defaultNanos = 0;
+        long expectedNanos = 0;
+        long actualNanos = 0;
+        for (String word : vocabulary) {
+            for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
+                int[] sample = SilenceProcessor.trimSilence(reader.readSpeechFileForTrainingData(word, i).getDataAsInts());
+                long start = System.nanoTime();
+                FeatureMatrix defaultFeatures = defaultFrontend.computeFeatureMatrix(sample);
+                defaultNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                FeatureMatrix expectedFeatures = expectedFrontend.computeFeatureMatrix(sample);
+                expectedNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                FeatureMatrix actualFeatures = actualFrontend.computeFeatureMatrix(sample);
+                actualNanos += System.nanoTime() - start;
+                kernelDifference.add(expectedFeatures, actualFeatures);
+                defaultDifference.add(defaultFeatures, actualFeatures);
+            }
+        }
+        String actualName = actual.getClass().getSimpleName();
+        kernelDifference.check(actualName + " against scalar kernels");
+        defaultDifference.check(actualName + " against the default frontend");
+        System.out.println(String.format("Default %.1fms, scalar kernels %.1fms, %s %.1fms",
+                defaultNanos/1e6, expectedNanos/1e6, actualName, actualNanos/1e6));
+    }
+
+    private static class FeatureDifference {
+
+        private int numFeatures = 0;
+        private int numDifferent = 0;
+        private double maxDifference = 0;
+
+        void add(FeatureMatrix expected, FeatureMatrix actual) {
+            if (expected.getNumFrames() != actual.getNumFrames()) {
+                throw new AssertionError("Expected " + expected.getNumFrames() + " frames but got " + actual.getNumFrames());
+            }
+            double[] expectedData = expected.getData();
+            double[] actualData = actual.getData();
+            for (int k = 0; k < expectedData.length; k++) {
+                double difference = Math.abs(expectedData[k] - actualData[k]);
+                if (difference != 0) { numDifferent++; }
+                maxDifference = Math.max(maxDifference, difference);
+                numFeatures++;
+            }
+        }
+
+        void check(String comparison) {
+            boolean passed = maxDifference <= MAX_FEATURE_DIFFERENCE;
+            System.out.println(String.format("Features, %s: %d/%d differ, max difference %.0f, %s",
+                    comparison, numDifferent, numFeatures, maxDifference, passed ? "PASS" : "FAIL"));
+            if (!passed) {
+                throw new AssertionError("Feature difference " + maxDifference + " of " + comparison + " exceeds truncation error");
+            }
+        }
+    }
+
+    private static double[] randomArray(Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) { array[i] = random.nextGaussian()*1000; }
+        return array;
+    }
+
+    private static double maxRelativeError(double[] expected, double[] actual) {
+        double maxError = 0;
+        for (int i = 0; i < expected.length; i++) {
+            maxError = Math.max(maxError, relativeError(Math.abs(expected[i]), Math.abs(expected[i] - actual[i])));
+        }
+        return maxError;
+    }
+
+    private static double relativeError(double magnitude, double error) {
+        return magnitude == 0 ? error : error/magnitude;
+    }
+}
@@ -0,0 +1,73 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.acoustic.ContinuousHMM;
+import ptemplin.nlp.asr.acoustic.HiddenMarkovModel;
+import ptemplin.nlp.asr.datacollection.LiveCapture;
+import ptemplin.nlp.asr.datacollection.WavFileAudioSource;
+import ptemplin.nlp.asr.frontend.FeatureFrameListener;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.FeatureMatrixCollector;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+import ptemplin.nlp.asr.io.WavFile;
+
+import java.util.Arrays;
+
+/**
+ * Plays training samples back through {@link LiveCapture} at real-time pace in place of the
+ * microphone, evaluating each utterance against a model as soon as capture ends, and checks the
+ * features against those of the batch frontend, failing on the first utterance whose features
+ * differ.
+ */
+public class LiveCaptureComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_SAMPLES = 3;
+
+    public static void main(String[] args) throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        LincolnFrontend frontend = new LincolnFrontend();
+        HiddenMarkovModel acousticModel = new ContinuousHMM();
+        for (String word : vocabulary) {
+            for (int i = 1; i <= NUM_SAMPLES; i++) {
+                String filePath = SpeechFileReader.getTrainingDataFilePath(word, i);
+                FeatureMatrixCollector collector = new FeatureMatrixCollector(LincolnFrontend.NUM_MFCC_COMPONENTS);
+                long[] decodedAt = new long[1];
+                double[] logLikelihood = new double[1];
+                // decodes the utterance once its last frame arrives
+                FeatureFrameListener decoder = new FeatureFrameListener() {
+                    @Override
+                    public void onFeatureFrame(double[] data, int offset) {
+                        collector.onFeatureFrame(data, offset);
+                    }
+
+                    @Override
+                    public void onEnd() {
+                        logLikelihood[0] = acousticModel.evaluateLogObservation(collector.getFeatureMatrix());
+                        decodedAt[0] = System.nanoTime();
+                    }
+                };
+
+                WavFile wavFile = WavFile.open(filePath);
+                LiveCapture capture = new LiveCapture(new WavFileAudioSource(wavFile, true), decoder);
+                long startTime = System.nanoTime();
+                capture.start();
+                capture.awaitCompletion();
+                double audioMillis = 1000.0*wavFile.getNumFrames()/wavFile.getSampleRate();
+
+                FeatureMatrix expected = frontend.computeFeatureMatrix(reader.readSpeechSamples(filePath));
+                FeatureMatrix actual = collector.getFeatureMatrix();
+                boolean matches = expected.getNumFrames() == actual.getNumFrames()
+                        && Arrays.equals(expected.getData(), actual.getData());
+                System.out.format("%s #%d: audio %.0f ms, decoded %.1f ms after start, ln P(O|M) = %.2f,"
+                                + " overruns %d, underruns %d, features %s%n",
+                        word, i, audioMillis, (decodedAt[0] - startTime)/1e6, logLikelihood[0],
+                        capture.getNumOverruns(), capture.getNumUnderruns(), matches ? "match" : "DIFFER");
+                if (!matches) {
+                    throw new IllegalStateException("Live features of " + filePath + " differ from the batch features");
+                }
+            }
+        }
+    }
+
+}
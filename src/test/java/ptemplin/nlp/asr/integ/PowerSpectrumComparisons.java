@@ -0,0 +1,120 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.CommonsMathPowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.PowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.RealFftPowerSpectrumTransformer;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+
+import java.util.Random;
+
+/**
+ * Checks {@link RealFftPowerSpectrumTransformer} against the commons-math power spectrum on
+ * random frames of several sizes, times the two, and compares the features computed with each.
+ */
+public class PowerSpectrumComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int[] SIZES = {4, 16, 64, LincolnFrontend.PADDED_FRAME_LENGTH, 1024};
+    private static final int NUM_TRIALS = 1000;
+    private static final int BENCHMARK_REPETITIONS = 100000;
+    // relative to the peak bin, as both sum in different orders
+    private static final double TOLERANCE = 1e-12;
+    // features are truncated to integers, so rounding can only move a feature across one boundary
+    private static final double MAX_FEATURE_DIFFERENCE = 1;
+
+    public static void main(String[] args) throws Exception {
+        for (int size : SIZES) {
+            compareSpectra(size);
+        }
+        benchmark(LincolnFrontend.PADDED_FRAME_LENGTH);
+        compareFeatures();
+    }
+
+    private static void compareSpectra(int size) {
+        PowerSpectrumTransformer expectedTransformer = new CommonsMathPowerSpectrumTransformer();
+        PowerSpectrumTransformer actualTransformer = new RealFftPowerSpectrumTransformer(size);
+        Random random = new Random(size);
+        double[] frame = new double[size];
+        double[] expected = new double[size];
+        double[] actual = new double[size];
+        double maxRelativeError = 0;
+        for (int trial = 0; trial < NUM_TRIALS; trial++) {
+            for (int i = 0; i < size; i++) {
+                frame[i] = random.nextGaussian()*10000;
+            }
+            expectedTransformer.computePowerSpectrum(frame, expected);
+            actualTransformer.computePowerSpectrum(frame, actual);
+            double maxPower = 0;
+            for (int i = 0; i < size; i++) { maxPower = Math.max(maxPower, expected[i]); }
+            for (int i = 0; i < size; i++) {
+                maxRelativeError = Math.max(maxRelativeError, Math.abs(expected[i] - actual[i]) / maxPower);
+            }
+        }
+        boolean passed = maxRelativeError <= TOLERANCE;
+        System.out.println(String.format("Size %d: max error relative to the peak bin %.3g, tolerance %.3g, %s",
+                size, maxRelativeError, TOLERANCE, passed ? "PASS" : "FAIL"));
+        if (!passed) {
+            throw new AssertionError("Error " + maxRelativeError + " of size " + size + " exceeds tolerance " + TOLERANCE);
+        }
+    }
+
+    private static void benchmark(int size) {
+        PowerSpectrumTransformer expectedTransformer = new CommonsMathPowerSpectrumTransformer();
+        PowerSpectrumTransformer actualTransformer = new RealFftPowerSpectrumTransformer(size);
+        Random random = new Random(0);
+        double[] frame = new double[size];
+        double[] powerSpectrum = new double[size];
+        for (int i = 0; i < size; i++) { frame[i] = random.nextGaussian()*10000; }
+        // the first pass warms up both
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < BENCHMARK_REPETITIONS; r++) {
+                expectedTransformer.computePowerSpectrum(frame, powerSpectrum);
+            }
+            long expectedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < BENCHMARK_REPETITIONS; r++) {
+                actualTransformer.computePowerSpectrum(frame, powerSpectrum);
+            }
+            long actualNanos = System.nanoTime() - start;
+            System.out.println(String.format("Size %d: commons-math %.0fns, real FFT %.0fns per frame",
+                    size, (double) expectedNanos/BENCHMARK_REPETITIONS, (double) actualNanos/BENCHMARK_REPETITIONS));
+        }
+    }
+
+    private static void compareFeatures() throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        LincolnFrontend expectedFrontend = new LincolnFrontend(true);
+        LincolnFrontend actualFrontend = new LincolnFrontend(true,
+                new RealFftPowerSpectrumTransformer(LincolnFrontend.PADDED_FRAME_LENGTH));
+        int numFeatures = 0;
+        int numDifferent = 0;
+        double maxDifference = 0;
+        for (String word : vocabulary) {
+            for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
+                int[] sample = SilenceProcessor.trimSilence(reader.readSpeechFileForTrainingData(word, i).getDataAsInts());
+                FeatureMatrix expectedFeatures = expectedFrontend.computeFeatureMatrix(sample);
+                FeatureMatrix actualFeatures = actualFrontend.computeFeatureMatrix(sample);
+                double[] expectedData = expectedFeatures.getData();
+                double[] actualData = actualFeatures.getData();
+                for (int k = 0; k < expectedData.length; k++) {
+                    double difference = Math.abs(expectedData[k] - actualData[k]);
+                    if (difference != 0) { numDifferent++; }
+                    maxDifference = Math.max(maxDifference, difference);
+                    numFeatures++;
+                }
+            }
+        }
+        boolean passed = maxDifference <= MAX_FEATURE_DIFFERENCE;
+        System.out.println(String.format("Features: %d/%d differ, max difference %.0f, %s",
+                numDifferent, numFeatures, maxDifference, passed ? "PASS" : "FAIL"));
+        if (!passed) {
+            throw new AssertionError("Feature difference " + maxDifference + " exceeds truncation error");
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.acoustic.ContinuousHMM;
+import ptemplin.nlp.asr.acoustic.IsolatedWordRecognizer;
+import ptemplin.nlp.asr.acoustic.ViterbiDecoder;
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
+
+/**
+ * Trains a model of each vocabulary word on its first samples, recognizes the remaining
+ * samples with an {@link IsolatedWordRecognizer}, and times recognition against a vocabulary
+ * of hundreds of models with increasing numbers of workers.
+ */
+public class RecognizerComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int NUM_MODEL_TRAINING_SAMPLES = 5;
+    private static final int N_BEST = 3;
+    private static final int LARGE_VOCABULARY_SIZE = 300;
+    private static final int NUM_TIMING_PASSES = 3;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, ContinuousHMM> models = new LinkedHashMap<>();
+        Map<String, List<FeatureMatrix>> testData = new LinkedHashMap<>();
+        try (BatchFeatureExtractor extractor = new BatchFeatureExtractor(
+                Runtime.getRuntime().availableProcessors(), () -> new LincolnFrontend(true), FEATURE_CACHE_DIR)) {
+            for (String word : vocabulary) {
+                List<FeatureMatrix> samples = extractor.extractFeaturesForTrainingData(word, 1, NUM_TRAINING_SAMPLES).getFeatureVectors();
+                ContinuousHMM model = new ContinuousHMM();
+                for (FeatureMatrix observationSeq : samples.subList(0, NUM_MODEL_TRAINING_SAMPLES)) {
+                    model.train(observationSeq);
+                }
+                models.put(word, model);
+                testData.put(word, samples.subList(NUM_MODEL_TRAINING_SAMPLES, NUM_TRAINING_SAMPLES));
+            }
+        }
+
+        int numCorrect = 0;
+        int numTested = 0;
+        try (IsolatedWordRecognizer recognizer = new IsolatedWordRecognizer(models)) {
+            for (Map.Entry<String, List<FeatureMatrix>> entry : testData.entrySet()) {
+                for (FeatureMatrix observationSeq : entry.getValue()) {
+                    List<IsolatedWordRecognizer.Hypothesis> nBest = recognizer.recognize(observationSeq, N_BEST);
+                    System.out.println(entry.getKey() + ": " + nBest);
+                    if (nBest.get(0).getWord().equals(entry.getKey())) {
+                        numCorrect++;
+                    }
+                    numTested++;
+                }
+            }
+        }
+        System.out.format("Recognized %d of %d held-out samples%n", numCorrect, numTested);
+
+        // many copies of the models stand in for a large vocabulary
+        Map<String, ContinuousHMM> largeVocabulary = new LinkedHashMap<>();
+        List<ContinuousHMM> trainedModels = new ArrayList<>(models.values());
+        for (int i = 0; i < LARGE_VOCABULARY_SIZE; i++) {
+            largeVocabulary.put("model" + i, trainedModels.get(i % trainedModels.size()));
+        }
+        FeatureMatrix observationSeq = testData.get("one").get(0);
+        double previousBest = Double.NaN;
+        int maxParallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+            try (IsolatedWordRecognizer recognizer = new IsolatedWordRecognizer(largeVocabulary, parallelism,
+                    ViterbiDecoder.DEFAULT_BEAM, () -> new LincolnFrontend(true))) {
+                long bestNanos = Long.MAX_VALUE;
+                double bestScore = 0;
+                for (int pass = 0; pass < NUM_TIMING_PASSES; pass++) {
+                    long startTime = System.nanoTime();
+                    bestScore = recognizer.recognize(observationSeq, N_BEST).get(0).getLogLikelihood();
+                    bestNanos = Math.min(bestNanos, System.nanoTime() - startTime);
+                }
+                System.out.format("%d models, %d workers: %.2f ms, best %.2f%n", LARGE_VOCABULARY_SIZE, parallelism,
+                        bestNanos/1e6, bestScore);
+                if (!Double.isNaN(previousBest) && previousBest != bestScore) {
+                    throw new AssertionError("Best score " + bestScore + " with " + parallelism
+                            + " workers differs from " + previousBest + " with " + parallelism/2);
+                }
+                previousBest = bestScore;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.PolyphaseResampler;
+
+import java.util.Arrays;
+
+/**
+ * Resamples a passband tone mixed with a louder tone above the output Nyquist frequency from
+ * each of the corpus' input rates, checking that the stream fed in uneven chunks gives exactly
+ * the block output, and that away from the edges the output is the passband tone alone.
+ */
+public class ResamplerComparisons {
+
+    private static final int[] INPUT_RATES = {48000, 44100, 16000};
+    private static final int OUTPUT_RATE = 12000;
+    private static final int SECONDS = 10;
+    private static final double PASSBAND_AMPLITUDE = 1000;
+    private static final double PASSBAND_FREQUENCY = 1000;
+    private static final double STOPBAND_AMPLITUDE = 5000;
+    private static final double STOPBAND_FREQUENCY = 7500;
+    // half a step of rounding to integers, plus what leaks through the stopband
+    private static final double MAX_TONE_ERROR = 2;
+
+    public static void main(String[] args) {
+        for (int inputRate : INPUT_RATES) {
+            int[] input = new int[inputRate*SECONDS];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = (int) (PASSBAND_AMPLITUDE*Math.sin(2*Math.PI*PASSBAND_FREQUENCY*i/inputRate)
+                        + STOPBAND_AMPLITUDE*Math.sin(2*Math.PI*STOPBAND_FREQUENCY*i/inputRate));
+            }
+            // the first pass warms up the filter loop
+            int[] output = PolyphaseResampler.resample(input, inputRate, OUTPUT_RATE);
+            long start = System.nanoTime();
+            output = PolyphaseResampler.resample(input, inputRate, OUTPUT_RATE);
+            long elapsed = System.nanoTime() - start;
+
+            int[] streamed = stream(input, inputRate, output.length);
+            if (!Arrays.equals(output, streamed)) {
+                throw new AssertionError(inputRate + " -> " + OUTPUT_RATE + ": streamed output differs from the block output");
+            }
+
+            // away from the edges, where the filter sees silence
+            double maxError = 0;
+            for (int n = OUTPUT_RATE/10; n < output.length - OUTPUT_RATE/10; n++) {
+                maxError = Math.max(maxError,
+                        Math.abs(output[n] - PASSBAND_AMPLITUDE*Math.sin(2*Math.PI*PASSBAND_FREQUENCY*n/OUTPUT_RATE)));
+            }
+            boolean passed = maxError <= MAX_TONE_ERROR;
+            System.out.println(String.format("%d -> %d: %d samples, streamed identical, max tone error %.1f, tolerance %.1f, %s, %.2fns per input",
+                    inputRate, OUTPUT_RATE, output.length, maxError, MAX_TONE_ERROR, passed ? "PASS" : "FAIL",
+                    elapsed/(double) input.length));
+            if (!passed) {
+                throw new AssertionError("Tone error " + maxError + " from " + inputRate + " exceeds tolerance " + MAX_TONE_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Feeds the input through a resampler in chunks of uneven sizes.
+     */
+    private static int[] stream(int[] input, int inputRate, int expectedLength) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, OUTPUT_RATE);
+        int[] streamed = new int[expectedLength + resampler.getMaxOutputLength(0)];
+        int numStreamed = 0;
+        for (int offset = 0, chunk = 1; offset < input.length; offset += chunk, chunk = chunk*3 % 1001 + 1) {
+            int length = Math.min(chunk, input.length - offset);
+            int[] chunkOutput = new int[resampler.getMaxOutputLength(length)];
+            int written = resampler.process(input, offset, length, chunkOutput, 0);
+            if (numStreamed + written > expectedLength) {
+                throw new AssertionError("Streamed more than the " + expectedLength + " samples of the block output");
+            }
+            System.arraycopy(chunkOutput, 0, streamed, numStreamed, written);
+            numStreamed += written;
+        }
+        numStreamed += resampler.end(streamed, numStreamed);
+        return Arrays.copyOf(streamed, numStreamed);
+    }
+
+}
@@ -0,0 +1,189 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
+import ptemplin.nlp.asr.frontend.lincoln.VoiceActivityDetector;
+import ptemplin.nlp.asr.io.SpeechFileReader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link SilenceProcessor#trimSilence(int[])} against the original nested-loop envelope
+ * on every recording of the corpus, and runs {@link VoiceActivityDetector} over the word
+ * recordings padded with silence, streamed in chunks of random sizes.
+ */
+public class SilenceComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    // as in SilenceProcessor
+    private static final int LOWPASS_N = 50;
+    private static final double SILENCE_THRESHOLD_RATIO = 1.0/5;
+    // 1s at 12kHz, more than the VAD's hangover
+    private static final int PADDING_SAMPLES = 12000;
+    private static final int MAX_CHUNK_SIZE = 2000;
+
+    public static void main(String[] args) throws Exception {
+        SpeechFileReader reader = new SpeechFileReader();
+        List<String> filePaths = new ArrayList<>();
+        for (String word : vocabulary) {
+            for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
+                filePaths.add(SpeechFileReader.getTrainingDataFilePath(word, i));
+            }
+        }
+        // and every phoneme recording
+        File[] phoneFiles = new File(SpeechFileReader.getPhoneFilePath("AA")).getParentFile().listFiles();
+        Arrays.sort(phoneFiles);
+        for (File phoneFile : phoneFiles) {
+            filePaths.add(phoneFile.getPath());
+        }
+
+        long referenceNanos = 0;
+        long runningSumNanos = 0;
+        for (String filePath : filePaths) {
+            int[] signal = reader.readSpeechSamples(filePath);
+            long start = System.nanoTime();
+            int[] expected = trimSilenceByNestedLoops(signal);
+            referenceNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            int[] actual = SilenceProcessor.trimSilence(signal);
+            runningSumNanos += System.nanoTime() - start;
+            if (!Arrays.equals(expected, actual)) {
+                throw new AssertionError("Trimmed " + filePath + " to " + actual.length
+                        + " samples where the nested loops give " + expected.length);
+            }
+        }
+        System.out.println(String.format("trimSilence: %d recordings identical to the nested loops, %.1fms against %.1fms",
+                filePaths.size(), runningSumNanos/1e6, referenceNanos/1e6));
+
+        Random random = new Random(0);
+        for (String word : vocabulary) {
+            for (int i = 1; i <= NUM_TRAINING_SAMPLES; i += 3) {
+                int[] recording = reader.readSpeechSamples(SpeechFileReader.getTrainingDataFilePath(word, i));
+                int[] padded = new int[PADDING_SAMPLES + recording.length + PADDING_SAMPLES];
+                System.arraycopy(recording, 0, padded, PADDING_SAMPLES, recording.length);
+                List<long[]> segments = detectSpeech(padded, padded.length);
+                List<long[]> chunkedSegments = detectSpeech(padded, 1 + random.nextInt(MAX_CHUNK_SIZE));
+                checkSegments(word + " #" + i, segments, padded.length);
+                if (!equalSegments(segments, chunkedSegments)) {
+                    throw new AssertionError("Speech in " + word + " #" + i + " detected at " + describe(chunkedSegments)
+                            + " in chunks but at " + describe(segments) + " all at once");
+                }
+                int[] bounds = findSpeechByNestedLoops(padded);
+                System.out.println(String.format("VAD %s #%d: speech %s, trimSilence keeps [%d, %d]",
+                        word, i, describe(segments), bounds[0], bounds[1]));
+            }
+        }
+    }
+
+    /**
+     * Runs a detector over the signal, pushing it in chunks of the given size.
+     *
+     * @return the start and end of every segment of speech detected
+     */
+    private static List<long[]> detectSpeech(int[] signal, int chunkSize) {
+        List<long[]> segments = new ArrayList<>();
+        VoiceActivityDetector detector = new VoiceActivityDetector(new VoiceActivityDetector.Listener() {
+            @Override
+            public void onSpeechStart(long sampleIndex) {
+                segments.add(new long[] {sampleIndex, -1});
+            }
+
+            @Override
+            public void onSpeechEnd(long sampleIndex) {
+                if (segments.isEmpty() || segments.get(segments.size() - 1)[1] >= 0) {
+                    throw new AssertionError("Speech ended at " + sampleIndex + " without starting");
+                }
+                segments.get(segments.size() - 1)[1] = sampleIndex;
+            }
+        });
+        for (int start = 0; start < signal.length; start += chunkSize) {
+            detector.process(signal, start, Math.min(chunkSize, signal.length - start));
+        }
+        detector.end();
+        return segments;
+    }
+
+    private static void checkSegments(String name, List<long[]> segments, int length) {
+        if (segments.isEmpty()) {
+            throw new AssertionError("No speech detected in " + name);
+        }
+        long previousEnd = -1;
+        for (long[] segment : segments) {
+            if (segment[1] < 0) {
+                throw new AssertionError("Speech in " + name + " starting at " + segment[0] + " never ended");
+            }
+            if (segment[0] <= previousEnd || segment[1] < segment[0] || segment[1] >= length) {
+                throw new AssertionError("Speech in " + name + " detected out of order: " + describe(segments));
+            }
+            previousEnd = segment[1];
+        }
+        // the padding is silent, so no speech may be detected in it
+        if (segments.get(0)[0] < PADDING_SAMPLES || previousEnd >= length - PADDING_SAMPLES) {
+            throw new AssertionError("Speech in " + name + " detected in the padding: " + describe(segments));
+        }
+    }
+
+    private static boolean equalSegments(List<long[]> expected, List<long[]> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals(expected.get(i), actual.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String describe(List<long[]> segments) {
+        StringBuilder description = new StringBuilder();
+        for (long[] segment : segments) {
+            description.append('[').append(segment[0]).append(", ").append(segment[1]).append(']');
+        }
+        return description.toString();
+    }
+
+    /**
+     * The original trimSilence, which averages the whole window afresh for every sample.
+     */
+    private static int[] trimSilenceByNestedLoops(int[] speechSignal) {
+        int[] bounds = findSpeechByNestedLoops(speechSignal);
+        return Arrays.copyOfRange(speechSignal, bounds[0], bounds[1] + 1);
+    }
+
+    private static int[] findSpeechByNestedLoops(int[] speechSignal) {
+        int[] speechEnvelope = new int[speechSignal.length];
+        // low-pass filter
+        int max = 0;
+        for (int i = 0; i < speechSignal.length; i++) {
+            int sum = 0;
+            for (int j = i - LOWPASS_N; j <= i + LOWPASS_N; j++) {
+                if (j >= speechSignal.length || j < 0) {
+                    continue;
+                }
+                sum += Math.abs(speechSignal[j]);
+            }
+            int avg = sum/(LOWPASS_N-1);
+            if (max < avg) {
+                max = avg;
+            }
+            speechEnvelope[i] = avg;
+        }
+
+        // find the cross-threshold points and take the first and last
+        final int threshold = (int) (max*SILENCE_THRESHOLD_RATIO);
+        List<Integer> crossThresholdPoints = new ArrayList<>();
+        for (int i = 0; i < speechEnvelope.length; i++) {
+            if (speechEnvelope[i] >= threshold && (i == 0 || speechEnvelope[i-1] < threshold
+                    || i == speechEnvelope.length - 1 || speechEnvelope[i+1] < threshold)) {
+                crossThresholdPoints.add(i);
+            }
+        }
+        return new int[] {crossThresholdPoints.get(0), crossThresholdPoints.get(crossThresholdPoints.size() - 1)};
+    }
+
+}
@@ -1,20 +1,18 @@
 package ptemplin.nlp.asr.integ;
 
-import ptemplin.nlp.asr.frontend.SpectralAnalyzer;
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
 import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
-import ptemplin.nlp.asr.frontend.lincoln.SilenceProcessor;
-import ptemplin.nlp.asr.io.SpeechFileReader;
-import ptemplin.nlp.asr.io.SpeechSample;
 
 import java.util.Arrays;
-import java.util.List;
 
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
 import static ptemplin.nlp.asr.frontend.FeatureAnalyzer.NUM_MFCC_COMPONENTS;
 
 public class StatisticalComparisons {
 
-    private static final SpectralAnalyzer analyzer = new LincolnFrontend();
-    private static final SpeechFileReader reader = new SpeechFileReader();
+    private static final BatchFeatureExtractor extractor = new BatchFeatureExtractor(
+            Runtime.getRuntime().availableProcessors(), () -> new LincolnFrontend(true), FEATURE_CACHE_DIR);
 
     private static final String[] vocabulary = {"one", "two", "three"};
     private static final int NUM_TRAINING_SAMPLES = 10;
@@ -24,24 +22,23 @@ public class StatisticalComparisons {
         computeStatsForWordClass("one");
         computeStatsForWordClass("two");
         computeStatsForWordClass("three");
+        extractor.close();
     }
 
     public static void computeStatsForWordClass(String className) throws Exception {
 
         double[] classMeans = new double[OBSERVATION_SIZE];
         double[] classVars = new double[OBSERVATION_SIZE];
-        for (int i = 1; i <= NUM_TRAINING_SAMPLES; i++) {
-            //System.out.println("Extracting features from test data " + i);
-            SpeechSample sample = reader.readSpeechFileForTrainingData(className, i);
-            int[] trimmedSpeech = SilenceProcessor.trimSilence(sample.getDataAsInts());
-            List<int[]> observationSeq = analyzer.computeFeatureVectors(trimmedSpeech);
+        BatchFeatureExtractor.Result batch = extractor.extractFeaturesForTrainingData(className, 1, NUM_TRAINING_SAMPLES);
+        System.out.println(String.format("Extracted features at %.1f files/s", batch.getFilesPerSecond()));
+        for (FeatureMatrix observationSeq : batch.getFeatureVectors()) {
 
             // get the mean for each component across the word
             double[] componentMeans = new double[OBSERVATION_SIZE];
-            int totalSamples = observationSeq.size();
+            int totalSamples = observationSeq.getNumFrames();
             for (int t = 0; t < totalSamples; t++) {
                 for (int c = 0; c < OBSERVATION_SIZE; c++) {
-                    componentMeans[c] += observationSeq.get(t)[c];
+                    componentMeans[c] += observationSeq.get(t, c);
                 }
             }
             for (int c = 0; c < componentMeans.length; c++) {
@@ -53,7 +50,7 @@ public class StatisticalComparisons {
             double[] componentVars = new double[OBSERVATION_SIZE];
             for (int t = 0; t < totalSamples; t++) {
                 for (int c = 0; c < OBSERVATION_SIZE; c++) {
-                    componentVars[c] += Math.pow(observationSeq.get(t)[c] - componentMeans[c], 2);
+                    componentVars[c] += Math.pow(observationSeq.get(t, c) - componentMeans[c], 2);
                 }
             }
             for (int c = 0; c < componentVars.length; c++) {
@@ -72,10 +69,10 @@ public class StatisticalComparisons {
         System.out.println("Variances: " + Arrays.toString(classVars));
     }
 
-    private static void printObservationVector(List<int[]> observationSequence) {
-        for (int i = 0; i < observationSequence.get(0).length; i++) {
-            for (int j = 0; j < observationSequence.size(); j++) {
-                System.out.format("%-4d  ", observationSequence.get(j)[i]);
+    private static void printObservationVector(FeatureMatrix observationSequence) {
+        for (int i = 0; i < observationSequence.getDimension(); i++) {
+            for (int j = 0; j < observationSequence.getNumFrames(); j++) {
+                System.out.format("%-4d  ", (int) observationSequence.get(j, i));
             }
             System.out.println();
         }
@@ -0,0 +1,104 @@
+package ptemplin.nlp.asr.integ;
+
+import ptemplin.nlp.asr.acoustic.ContinuousHMM;
+import ptemplin.nlp.asr.acoustic.HiddenMarkovModel;
+import ptemplin.nlp.asr.acoustic.ViterbiDecoder;
+import ptemplin.nlp.asr.frontend.BatchFeatureExtractor;
+import ptemplin.nlp.asr.frontend.FeatureMatrix;
+import ptemplin.nlp.asr.frontend.lincoln.LincolnFrontend;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static ptemplin.nlp.asr.application.Constants.FEATURE_CACHE_DIR;
+
+/**
+ * Compares the Viterbi score of each training sample with its forward score under a model
+ * trained on the first few samples, checks the best-path alignments, and times the forward
+ * pass against Viterbi decoding with and without a beam on the samples concatenated into one
+ * long utterance.
+ */
+public class ViterbiComparisons {
+
+    private static final String[] vocabulary = {"one", "two", "three"};
+    private static final int NUM_TRAINING_SAMPLES = 10;
+    private static final int NUM_MODEL_TRAINING_SAMPLES = 3;
+    private static final int NUM_TIMING_PASSES = 5;
+
+    public static void main(String[] args) throws Exception {
+        HiddenMarkovModel model = new ContinuousHMM();
+        try (BatchFeatureExtractor extractor = new BatchFeatureExtractor(
+                Runtime.getRuntime().availableProcessors(), () -> new LincolnFrontend(true), FEATURE_CACHE_DIR)) {
+            List<FeatureMatrix> trainingData = extractor.extractFeaturesForTrainingData("one", 1, NUM_MODEL_TRAINING_SAMPLES).getFeatureVectors();
+            for (FeatureMatrix observationSeq : trainingData) {
+                model.train(observationSeq);
+            }
+            ViterbiDecoder exhaustive = new ViterbiDecoder(Double.POSITIVE_INFINITY);
+            ViterbiDecoder pruned = new ViterbiDecoder();
+            for (String word : vocabulary) {
+                for (FeatureMatrix observationSeq : extractor.extractFeaturesForTrainingData(word, 1, NUM_TRAINING_SAMPLES).getFeatureVectors()) {
+                    double forward = model.evaluateLogObservation(observationSeq);
+                    ViterbiDecoder.Result best = exhaustive.decode(model, observationSeq);
+                    ViterbiDecoder.Result beam = pruned.decode(model, observationSeq);
+                    System.out.format("%-5s frames %3d  forward %10.2f  viterbi %10.2f  beam %10.2f%n",
+                            word, observationSeq.getNumFrames(), forward, best.getLogLikelihood(), beam.getLogLikelihood());
+                    // the best path is one of those the forward pass sums over
+                    if (!(best.getLogLikelihood() <= forward)) {
+                        throw new AssertionError("Viterbi score " + best.getLogLikelihood() + " of " + word
+                                + " exceeds the forward score " + forward);
+                    }
+                    if (!isValidAlignment(best.getStateAlignment(), model.getTransitionProbs().length - 1)) {
+                        throw new AssertionError("Invalid alignment of " + word + ": " + Arrays.toString(best.getStateAlignment()));
+                    }
+                }
+            }
+
+            FeatureMatrix longUtterance = concatenate(extractor.extractFeaturesForTrainingData("one", 1, NUM_TRAINING_SAMPLES).getFeatureVectors());
+            for (int pass = 0; pass < NUM_TIMING_PASSES; pass++) {
+                long startTime = System.nanoTime();
+                double forward = model.evaluateLogObservation(longUtterance);
+                long forwardNanos = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                ViterbiDecoder.Result best = exhaustive.decode(model, longUtterance);
+                long exhaustiveNanos = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                ViterbiDecoder.Result beam = pruned.decode(model, longUtterance);
+                long prunedNanos = System.nanoTime() - startTime;
+                System.out.format("%d frames: forward %.2f ms (%.1f), viterbi %.2f ms (%.1f), beam %.2f ms (%.1f, %.2f active states/frame)%n",
+                        longUtterance.getNumFrames(), forwardNanos/1e6, forward, exhaustiveNanos/1e6, best.getLogLikelihood(),
+                        prunedNanos/1e6, beam.getLogLikelihood(), beam.getNumActiveStates()/(double) longUtterance.getNumFrames());
+            }
+        }
+    }
+
+    // starts in the first state, ends in the last and never skips or goes back
+    private static boolean isValidAlignment(int[] alignment, int lastState) {
+        if (alignment == null) {
+            return false;
+        }
+        int previous = 0;
+        for (int state : alignment) {
+            if (state != previous && state != previous + 1) {
+                return false;
+            }
+            previous = state;
+        }
+        return previous == lastState;
+    }
+
+    private static FeatureMatrix concatenate(List<FeatureMatrix> featureVectors) {
+        int numFrames = 0;
+        for (FeatureMatrix features : featureVectors) {
+            numFrames += features.getNumFrames();
+        }
+        int dimension = featureVectors.get(0).getDimension();
+        double[] data = new double[numFrames*dimension];
+        int position = 0;
+        for (FeatureMatrix features : featureVectors) {
+            System.arraycopy(features.getData(), 0, data, position, features.getNumFrames()*dimension);
+            position += features.getNumFrames()*dimension;
+        }
+        return new FeatureMatrix(data, numFrames, dimension);
+    }
+
+}
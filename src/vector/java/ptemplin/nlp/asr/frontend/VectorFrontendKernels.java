@@ -0,0 +1,91 @@
+package ptemplin.nlp.asr.frontend;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Frontend kernels using the incubating Vector API, with the JVM's preferred vector width.
+ * Requires the jdk.incubator.vector module at compile and run time, so this class lives in its
+ * own source root, src/vector/java, which is only compiled when the module is available; use
+ * {@link ScalarFrontendKernels#createFastest()} to fall back when it is absent. All kernels
+ * except {@link #dot} give results identical to the scalar kernels, while the dot product sums
+ * in a different order and so agrees only to within rounding.
+ */
+public class VectorFrontendKernels implements FrontendKernels {
+
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	// ints with as many lanes as the doubles, for converting samples
+	private static final VectorSpecies<Integer> INTS =
+			VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize()/2));
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void window(int[] samples, int startIndex, double[] window, double[] out, int outOffset, int length) {
+		int i = 0;
+		for (int upperBound = DOUBLES.loopBound(length); i < upperBound; i += DOUBLES.length()) {
+			DoubleVector sampleVector = (DoubleVector) IntVector.fromArray(INTS, samples, startIndex + i)
+					.convertShape(VectorOperators.I2D, DOUBLES, 0);
+			sampleVector.mul(DoubleVector.fromArray(DOUBLES, window, i)).intoArray(out, outOffset + i);
+		}
+		for (; i < length; i++) {
+			out[outOffset + i] = samples[startIndex + i]*window[i];
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void multiply(double[] data, double[] weights, int length) {
+		int i = 0;
+		for (int upperBound = DOUBLES.loopBound(length); i < upperBound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, data, i).mul(DoubleVector.fromArray(DOUBLES, weights, i)).intoArray(data, i);
+		}
+		for (; i < length; i++) {
+			data[i] *= weights[i];
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void squaredMagnitude(double[] real, double[] imaginary, double[] power, int length) {
+		int i = 0;
+		for (int upperBound = DOUBLES.loopBound(length); i < upperBound; i += DOUBLES.length()) {
+			DoubleVector re = DoubleVector.fromArray(DOUBLES, real, i);
+			DoubleVector im = DoubleVector.fromArray(DOUBLES, imaginary, i);
+			re.mul(re).add(im.mul(im)).intoArray(power, i);
+		}
+		for (; i < length; i++) {
+			power[i] = real[i]*real[i] + imaginary[i]*imaginary[i];
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		int i = 0;
+		double sum = 0;
+		int upperBound = DOUBLES.loopBound(length);
+		if (upperBound > 0) {
+			DoubleVector sums = DoubleVector.zero(DOUBLES);
+			for (; i < upperBound; i += DOUBLES.length()) {
+				sums = DoubleVector.fromArray(DOUBLES, a, aOffset + i).fma(DoubleVector.fromArray(DOUBLES, b, bOffset + i), sums);
+			}
+			sum = sums.reduceLanes(VectorOperators.ADD);
+		}
+		for (; i < length; i++) {
+			sum += a[aOffset + i]*b[bOffset + i];
+		}
+		return sum;
+	}
+	
+}